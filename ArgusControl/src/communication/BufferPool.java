@@ -0,0 +1,61 @@
+package communication;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Pool of direct ByteBuffers, so received images don't create garbage. The
+ * capacity of new buffers is rounded up to a power of two, so buffers can be
+ * reused for images of a similar size.
+ * 
+ * @author Moritz Skowronski
+ *
+ */
+public class BufferPool {
+
+	// Buffers that aren't used
+	private ArrayDeque<ByteBuffer> freeBuffers;
+
+	// More free buffers are left to the garbage collector
+	private int maxFreeBuffers;
+
+	public BufferPool(int maxFreeBuffers) {
+
+		freeBuffers = new ArrayDeque<ByteBuffer>();
+		this.maxFreeBuffers = maxFreeBuffers;
+	}
+
+	/**
+	 * Returns a cleared buffer with at least the given capacity
+	 * 
+	 * @param capacity
+	 * @return
+	 */
+	public synchronized ByteBuffer acquire(int capacity) {
+
+		Iterator<ByteBuffer> iterator = freeBuffers.iterator();
+		while (iterator.hasNext()) {
+
+			ByteBuffer buffer = iterator.next();
+			if (buffer.capacity() >= capacity) {
+				iterator.remove();
+				buffer.clear();
+				return buffer;
+			}
+		}
+
+		return ByteBuffer.allocateDirect(Integer.highestOneBit(Math.max(1, capacity - 1)) << 1);
+	}
+
+	/**
+	 * Gives a buffer back to the pool, it must not be used afterwards
+	 * 
+	 * @param buffer
+	 */
+	public synchronized void release(ByteBuffer buffer) {
+
+		if (freeBuffers.size() < maxFreeBuffers)
+			freeBuffers.push(buffer);
+	}
+}
@@ -14,6 +14,7 @@ import oscP5.OscStatus;
 import processing.core.PVector;
 import scene.Person;
 import scene.OSCUpdateListener;
+import visualization.ImageUpdateListener;
 
 /**
  * This is a management class handling all incoming and outgoind communications.
@@ -29,6 +30,10 @@ public class CommunicationHandler implements TCPConnectListener, OscEventListene
 	// Used to validate and assign incoming data
 	private HashMap<String, String> ipNameMap;
 
+	private DiscoveryResponder discoveryResponder;
+
+	private Thread discoveryThread;
+
 	private UDPServer udpServer;
 
 	private Thread udpserverThread;
@@ -43,13 +48,16 @@ public class CommunicationHandler implements TCPConnectListener, OscEventListene
 
 	private Control control;
 
-	// Port for UDP, TCP, OSC listen & registration of new Kinects
+	// Port for TCP & registration of new Kinects, OSC is port + 1, images
+	// are streamed to port + 2
 	private int port;
 
-	public CommunicationHandler(UDPServer udpServer, TCPServer tcpServer, OSCUpdateListener updateListener) {
+	public CommunicationHandler(DiscoveryResponder discoveryResponder, UDPServer udpServer, TCPServer tcpServer,
+			OSCUpdateListener updateListener) {
 
 		ipNameMap = new HashMap<String, String>();
 
+		this.discoveryResponder = discoveryResponder;
 		this.udpServer = udpServer;
 
 		this.tcpServer = tcpServer;
@@ -70,15 +78,15 @@ public class CommunicationHandler implements TCPConnectListener, OscEventListene
 	}
 
 	/**
-	 * Starts a UDP Thread, a TCP Server Thread and an OSC Receiver
-	 * 
-	 * @param port
-	 *            port for TCP & UDP, OSC is port + 1
+	 * Starts a discovery Thread, a UDP image Thread, a TCP Server Thread and an
+	 * OSC Receiver. Discovery and TCP use the port, OSC port + 1 and the images
+	 * port + 2
 	 */
 	public void startup() {
 		// Create a UDP Listener Thread
 
-		udpServer.setListenPort(port);
+		discoveryResponder.setPorts(port, port + 1, port + 2);
+		udpServer.setListenPort(port + 2);
 		tcpServer.setServerSocket(port);
 
 		// Create a TCP Server Thread
@@ -86,6 +94,11 @@ public class CommunicationHandler implements TCPConnectListener, OscEventListene
 		tcpserverThread.setDaemon(true);
 		tcpserverThread.start();
 
+		// Discovery has its own thread, so streamed images don't delay it
+		discoveryThread = new Thread(discoveryResponder);
+		discoveryThread.setDaemon(true);
+		discoveryThread.start();
+
 		udpserverThread = new Thread(udpServer);
 		udpserverThread.setDaemon(true);
 		udpserverThread.start();
@@ -103,6 +116,16 @@ public class CommunicationHandler implements TCPConnectListener, OscEventListene
 		ipNameMap.put(ip, name);
 	}
 
+	/**
+	 * Sets the listener receiving the streamed images of a Kinect
+	 * 
+	 * @param name
+	 * @param listener
+	 */
+	public void addImageListener(String name, ImageUpdateListener listener) {
+		udpServer.addImageListener(name, listener);
+	}
+
 	/**
 	 * Set Port for TPC & UDP Communication
 	 * 
@@ -244,6 +267,8 @@ public class CommunicationHandler implements TCPConnectListener, OscEventListene
 	 */
 	public void shutdown() {
 		try {
+			discoveryResponder.interrupt();
+			discoveryThread.interrupt();
 			udpServer.interrupt();
 			udpserverThread.interrupt();
 			try {
@@ -0,0 +1,238 @@
+package communication;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Lossless compression of depth images for streaming. Every depth value is
+ * stored as the difference to the last valid value, so the smooth surfaces of
+ * a depth image become small numbers. The differences are zigzag encoded, so
+ * small negative numbers stay small, and written as variable length integers.
+ * Runs of unchanged values and runs of invalid pixels (0) are written as a
+ * single run length, invalid pixels don't change the last valid value. Four
+ * small differences, like the noise on a surface, are packed into one token.
+ * 
+ * The encoded image starts with the version of the codec (byte), width (short)
+ * and height (short), followed by the tokens. A token is a variable length
+ * integer whose lowest two bits tell its kind, the rest is the zigzag encoded
+ * difference or the length of the run - 1.
+ * 
+ * Has to be the same in ArgusKinect and ArgusControl. Change the VERSION with
+ * every change of the format, so different codecs reject each other.
+ * 
+ * @author Moritz Skowronski
+ *
+ */
+public class DepthCodec {
+
+	// version of the format, checked by the decoder
+	private static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 5;
+
+	// Kinds of tokens
+	private static final int DIFFERENCE = 0;
+	private static final int UNCHANGED = 1;
+	private static final int INVALID = 2;
+	private static final int SMALL = 3;
+
+	// differences packed into a SMALL token are between -4 and 3
+	private static final int SMALL_BITS = 3;
+	private static final int SMALL_OFFSET = 4;
+	private static final int SMALL_COUNT = 4;
+
+	/**
+	 * Returns the number of bytes an image needs at most, use it as size of
+	 * the buffer for {@link #encode(short[], int, int, byte[])}
+	 * 
+	 * @param width
+	 * @param height
+	 * @return
+	 */
+	public static int maxEncodedLength(int width, int height) {
+		// a difference of two shorts fits into 3 bytes
+		return HEADER_SIZE + 3 * width * height;
+	}
+
+	/**
+	 * Encodes a depth image
+	 * 
+	 * @param depth
+	 *            between 0 - 8000, width * height values
+	 * @param width
+	 * @param height
+	 * @param out
+	 *            at least {@link #maxEncodedLength(int, int)} bytes
+	 * @return the number of bytes written to out
+	 */
+	public static int encode(short[] depth, int width, int height, byte[] out) {
+
+		int position = 0;
+		out[position++] = (byte) VERSION;
+		out[position++] = (byte) (width >> 8);
+		out[position++] = (byte) width;
+		out[position++] = (byte) (height >> 8);
+		out[position++] = (byte) height;
+
+		int samples = width * height;
+		int last = 0;
+		int run = 0;
+		int runKind = UNCHANGED;
+		for (int i = 0; i < samples; i++) {
+
+			int value = depth[i];
+			int kind = value == 0 ? INVALID : value == last ? UNCHANGED : DIFFERENCE;
+
+			int small = kind != INVALID ? packSmall(depth, i, samples, last) : -1;
+			if (small >= 0)
+				kind = SMALL;
+
+			if (run > 0 && kind != runKind) {
+				position = writeVarInt(out, position, (run - 1) << 2 | runKind);
+				run = 0;
+			}
+			if (kind == SMALL) {
+				position = writeVarInt(out, position, small << 2 | SMALL);
+				i += SMALL_COUNT - 1;
+				last = depth[i];
+				continue;
+			}
+			if (kind != DIFFERENCE) {
+				runKind = kind;
+				run++;
+				continue;
+			}
+
+			int difference = value - last;
+			last = value;
+			// zigzag, the sign moves into the lowest bit
+			int zigzag = (difference << 1) ^ (difference >> 31);
+			position = writeVarInt(out, position, zigzag << 2 | DIFFERENCE);
+		}
+		if (run > 0)
+			position = writeVarInt(out, position, (run - 1) << 2 | runKind);
+
+		return position;
+	}
+
+	/**
+	 * Decodes a depth image in a single pass
+	 * 
+	 * @param in
+	 *            the encoded image between position and limit
+	 * @param depth
+	 *            receives the depth, at least width * height values
+	 * @return the number of decoded values, width * height
+	 * @throws IOException
+	 *             if the image is corrupt, was encoded by another version or
+	 *             doesn't fit into depth
+	 */
+	public static int decode(ByteBuffer in, int[] depth) throws IOException {
+
+		if (in.remaining() < HEADER_SIZE)
+			throw new IOException("Depth image too short");
+
+		int version = in.get() & 0xFF;
+		if (version != VERSION)
+			throw new IOException("Depth image of codec version " + version + ", expected " + VERSION);
+
+		int width = in.getShort() & 0xFFFF;
+		int height = in.getShort() & 0xFFFF;
+		int samples = width * height;
+		if (samples > depth.length)
+			throw new IOException("Depth image " + width + "x" + height + " too big");
+
+		int i = 0;
+		int last = 0;
+		while (i < samples) {
+
+			int token = readVarInt(in);
+			int kind = token & 3;
+			if (kind == DIFFERENCE) {
+				int zigzag = token >>> 2;
+				last += (zigzag >>> 1) ^ -(zigzag & 1);
+				depth[i++] = last;
+			} else if (kind == SMALL) {
+				if (i + SMALL_COUNT > samples)
+					throw new IOException("Corrupt small differences in depth image");
+				int small = token >>> 2;
+				for (int k = 0; k < SMALL_COUNT; k++, small >>>= SMALL_BITS) {
+					last += (small & ((1 << SMALL_BITS) - 1)) - SMALL_OFFSET;
+					depth[i++] = last;
+				}
+			} else {
+				int end = i + (token >>> 2) + 1;
+				if (end > samples)
+					throw new IOException("Corrupt run in depth image");
+				int value = kind == INVALID ? 0 : last;
+				while (i < end) {
+					depth[i++] = value;
+				}
+			}
+		}
+		return samples;
+	}
+
+	/**
+	 * Packs the differences of the next values into one number, if they are
+	 * all valid, small and not all unchanged
+	 * 
+	 * @return the packed differences or -1
+	 */
+	private static int packSmall(short[] depth, int start, int samples, int last) {
+
+		if (start + SMALL_COUNT > samples)
+			return -1;
+
+		int packed = 0;
+		boolean changed = false;
+		for (int k = 0; k < SMALL_COUNT; k++) {
+
+			int value = depth[start + k];
+			int difference = value - last;
+			if (value == 0 || difference < -SMALL_OFFSET || difference >= SMALL_OFFSET)
+				return -1;
+			changed |= difference != 0;
+			packed |= (difference + SMALL_OFFSET) << (k * SMALL_BITS);
+			last = value;
+		}
+		return changed ? packed : -1;
+	}
+
+	/**
+	 * Writes an unsigned variable length integer, 7 bits per byte, the highest
+	 * bit tells that another byte follows
+	 * 
+	 * @return the position after the integer
+	 */
+	private static int writeVarInt(byte[] out, int position, int value) {
+
+		while ((value & ~0x7F) != 0) {
+			out[position++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out[position++] = (byte) value;
+		return position;
+	}
+
+	/**
+	 * Reads an unsigned variable length integer
+	 * 
+	 * @throws IOException
+	 *             if the integer is cut off or too long
+	 */
+	private static int readVarInt(ByteBuffer in) throws IOException {
+
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+
+			if (!in.hasRemaining())
+				throw new IOException("Depth image cut off");
+			int b = in.get();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Corrupt depth image");
+	}
+}
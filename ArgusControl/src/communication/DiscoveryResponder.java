@@ -0,0 +1,141 @@
+package communication;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketException;
+import java.util.ArrayList;
+
+/**
+ * This class listens to all incoming UDP Broadcasts, checks whether they are
+ * coming from a valid Kinect Source and answers with the ports for OSC and the
+ * image stream. The TCP Port is the port of this socket.
+ * 
+ * Runs on its own port and thread, so streamed images never delay the answer.
+ * 
+ * @author Moritz Skowronski
+ *
+ */
+public class DiscoveryResponder implements Runnable {
+
+	private DatagramSocket socket;
+
+	private int listenPort;
+
+	// ports sent to the Kinect
+	private int oscPort;
+	private int imagePort;
+
+	private volatile boolean listening;
+
+	// start of answer of Server to client
+	private static final String ANSWER = "DISCOVER_SERVER_RESPONSE/";
+
+	private static final String MESSAGESTART = "DISCOVER_SERVER_REQUEST/";
+
+	// All classes that need to know about new Kinects
+	private ArrayList<KinectConnectListener> listeners;
+
+	public DiscoveryResponder() {
+
+		listeners = new ArrayList<KinectConnectListener>();
+	}
+
+	public void run() {
+		try {
+
+			System.out.println("Discovery listening on Port " + listenPort);
+
+			socket = new DatagramSocket(listenPort);
+			socket.setBroadcast(true);
+
+			// requests are short, a bigger buffer isn't needed
+			byte[] recvBuf = new byte[1024];
+			DatagramPacket packet = new DatagramPacket(recvBuf, recvBuf.length);
+
+			while (listening) {
+
+				// Receive a packet
+				packet.setLength(recvBuf.length);
+				socket.receive(packet);
+
+				// See if the packet holds the right command
+				String message = new String(packet.getData(), packet.getOffset(), packet.getLength()).trim();
+				if (!message.startsWith(MESSAGESTART))
+					continue;
+
+				// Get Kinect Name
+				String kinectName = message.substring(MESSAGESTART.length());
+				byte[] sendData = (ANSWER + oscPort + "/" + imagePort).getBytes();
+
+				// Send a response
+				socket.send(new DatagramPacket(sendData, sendData.length, packet.getAddress(), packet.getPort()));
+
+				// Notify all relevant classes about the new Kinect
+				notifyAboutNewKinect(kinectName, packet.getAddress().getHostAddress());
+			}
+
+		} catch (SocketException e) {
+			listening = false;
+			System.err.println("Error on Discovery Socket, Closed?");
+		} catch (IOException e) {
+			listening = false;
+			System.err.println("Error on IO Handling for UDP Broadcast Server");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Interrupts this Thread
+	 */
+	public void interrupt() {
+		System.out.println("Discovery shutting down");
+		listening = false;
+		if (socket != null)
+			socket.close();
+	}
+
+	/**
+	 * Sets the port listening for broadcasts and the ports sent to the Kinects
+	 * 
+	 * @param listenPort
+	 *            also the TCP Port
+	 * @param oscPort
+	 * @param imagePort
+	 *            port of the {@link UDPServer}
+	 */
+	public void setPorts(int listenPort, int oscPort, int imagePort) {
+		this.listenPort = listenPort;
+		this.oscPort = oscPort;
+		this.imagePort = imagePort;
+		listening = true;
+	}
+
+	/**
+	 * Gets the current status of the Thread, true if running or ready to run
+	 * 
+	 * @return
+	 */
+	public boolean getStatus() {
+		return listening;
+	}
+
+	/*----------------Listener Methods--------------*/
+
+	/**
+	 * Adds a new Kinect listener to the objects that are notified when theres a
+	 * new Kincet
+	 * 
+	 * @param listener
+	 *            the new Listener
+	 */
+	public void addListener(KinectConnectListener listener) {
+		this.listeners.add(listener);
+	}
+
+	public void notifyAboutNewKinect(String name, String ip) {
+		for (KinectConnectListener kinectConnectListener : listeners) {
+			kinectConnectListener.kinectRecognized(name, ip);
+		}
+	}
+}
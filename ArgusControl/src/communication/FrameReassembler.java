@@ -0,0 +1,267 @@
+package communication;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * Puts the chunks of the streamed images back together, see
+ * {@link ImageChunk}. Every Kinect has at most one image being assembled. A
+ * chunk of a newer image replaces an incomplete older image, chunks of images
+ * older than the last completed or replaced image are dropped, so late images
+ * are never shown. Images that don't complete in time are evicted.
+ *
+ * The images are assembled in pooled direct buffers, a completed image must be
+ * released when it is decoded.
+ *
+ * @author Moritz Skowronski
+ *
+ */
+public class FrameReassembler {
+
+	// An incomplete image is dropped after this time in milliseconds
+	private static final long TIMEOUT = 500;
+
+	// <Kinect id, image being assembled>
+	private HashMap<Integer, Assembly> assemblies;
+
+	// <Kinect id, sequence of the newest image that was completed or dropped>
+	private HashMap<Integer, Integer> lastSequences;
+	// <Kinect id, time the last sequence was set>
+	private HashMap<Integer, Long> lastTimes;
+
+	// number of images that were incomplete when they were dropped
+	private long droppedFrames;
+
+	private BufferPool bufferPool;
+
+	public FrameReassembler() {
+
+		bufferPool = new BufferPool(8);
+
+		assemblies = new HashMap<Integer, Assembly>();
+		lastSequences = new HashMap<Integer, Integer>();
+		lastTimes = new HashMap<Integer, Long>();
+	}
+
+	/**
+	 * Adds a received chunk, the header is read without changing the position
+	 * of the packet
+	 *
+	 * @param packet
+	 *            the chunk including the header between position and limit
+	 * @return the completed image or null, if the image isn't complete yet
+	 */
+	public Assembly add(ByteBuffer packet) {
+
+		long now = System.currentTimeMillis();
+		evict(now);
+
+		int start = packet.position();
+		if (packet.remaining() < ImageChunk.HEADER_SIZE || packet.getInt(start) != ImageChunk.MAGIC)
+			return null;
+
+		int type = packet.getInt(start + 4);
+		int kinectId = packet.getInt(start + 8);
+		int sequence = packet.getInt(start + 12);
+		int chunk = packet.getShort(start + 16) & 0xFFFF;
+		int chunkCount = packet.getShort(start + 18) & 0xFFFF;
+		// The chunk count decides the size of the buffer, so it can't be
+		// trusted
+		if (chunkCount == 0 || chunkCount > ImageChunk.MAX_CHUNKS || chunk >= chunkCount)
+			return null;
+
+		// Drop chunks of late images, the difference handles an overflow of
+		// the sequence. If nothing arrived for a while, the Kinect restarted
+		// and counts from 0 again
+		Integer lastSequence = lastSequences.get(kinectId);
+		if (lastSequence != null && sequence - lastSequence <= 0 && now - lastTimes.get(kinectId) < TIMEOUT)
+			return null;
+
+		Assembly assembly = assemblies.get(kinectId);
+		if (assembly != null && assembly.sequence != sequence) {
+			if (sequence - assembly.sequence < 0)
+				return null;
+
+			// A newer image started before this one was complete
+			drop(kinectId, assembly);
+			assembly = null;
+		}
+		if (assembly == null) {
+			assembly = new Assembly(type, kinectId, sequence, chunkCount, now, bufferPool);
+			assemblies.put(kinectId, assembly);
+		}
+
+		if (!assembly.add(chunk, packet, start + ImageChunk.HEADER_SIZE))
+			return null;
+
+		assemblies.remove(kinectId);
+		setLastSequence(kinectId, sequence, now);
+		return assembly;
+	}
+
+	/**
+	 * Drops all images that didn't complete in time
+	 *
+	 * @param now
+	 */
+	private void evict(long now) {
+
+		Iterator<Assembly> iterator = assemblies.values().iterator();
+		while (iterator.hasNext()) {
+
+			Assembly assembly = iterator.next();
+			if (now - assembly.started > TIMEOUT) {
+				iterator.remove();
+				assembly.release();
+				setLastSequence(assembly.kinectId, assembly.sequence, now);
+				droppedFrames++;
+			}
+		}
+	}
+
+	/**
+	 * Drops an incomplete image
+	 *
+	 * @param kinectId
+	 * @param assembly
+	 */
+	private void drop(int kinectId, Assembly assembly) {
+
+		assemblies.remove(kinectId);
+		assembly.release();
+		setLastSequence(kinectId, assembly.sequence, System.currentTimeMillis());
+		droppedFrames++;
+	}
+
+	/**
+	 * Remembers the newest image of a Kinect, older images are dropped
+	 *
+	 * @param kinectId
+	 * @param sequence
+	 * @param now
+	 */
+	private void setLastSequence(int kinectId, int sequence, long now) {
+
+		lastSequences.put(kinectId, sequence);
+		lastTimes.put(kinectId, now);
+	}
+
+	/**
+	 * Returns the number of images that were dropped, because chunks were
+	 * missing
+	 *
+	 * @return
+	 */
+	public long getDroppedFrames() {
+		return droppedFrames;
+	}
+
+	/**
+	 * An image being assembled from its chunks
+	 */
+	public static class Assembly {
+
+		private int type;
+		private int kinectId;
+		private int sequence;
+		private long started;
+
+		private BufferPool bufferPool;
+		// null after the image was released
+		private ByteBuffer data;
+		private int length;
+
+		private boolean[] received;
+		private int missing;
+
+		Assembly(int type, int kinectId, int sequence, int chunkCount, long started, BufferPool bufferPool) {
+
+			this.type = type;
+			this.kinectId = kinectId;
+			this.sequence = sequence;
+			this.started = started;
+			this.bufferPool = bufferPool;
+
+			data = bufferPool.acquire(chunkCount * ImageChunk.MAX_PAYLOAD);
+			received = new boolean[chunkCount];
+			missing = chunkCount;
+		}
+
+		/**
+		 * Copies the payload of a chunk into the image
+		 *
+		 * @param chunk
+		 * @param packet
+		 * @param offset
+		 *            start of the payload in the packet, the payload ends at
+		 *            the limit
+		 * @return true, if the image is complete
+		 */
+		boolean add(int chunk, ByteBuffer packet, int offset) {
+
+			int payload = packet.limit() - offset;
+			if (chunk >= received.length || received[chunk] || payload > ImageChunk.MAX_PAYLOAD)
+				return false;
+
+			ByteBuffer source = packet.duplicate();
+			source.position(offset);
+			data.position(chunk * ImageChunk.MAX_PAYLOAD);
+			data.put(source);
+			received[chunk] = true;
+			missing--;
+
+			// Only the last chunk can be shorter
+			if (chunk == received.length - 1)
+				length = chunk * ImageChunk.MAX_PAYLOAD + payload;
+
+			return missing == 0;
+		}
+
+		/**
+		 * Returns the type of the image, see {@link ImageChunk}
+		 *
+		 * @return
+		 */
+		public int getType() {
+			return type;
+		}
+
+		public int getKinectId() {
+			return kinectId;
+		}
+
+		public int getSequence() {
+			return sequence;
+		}
+
+		/**
+		 * Returns the encoded image between position 0 and the limit. Must not
+		 * be used after {@link #release()}
+		 *
+		 * @return
+		 */
+		public ByteBuffer getBuffer() {
+
+			ByteBuffer buffer = data.duplicate();
+			buffer.position(0);
+			buffer.limit(length);
+			return buffer;
+		}
+
+		public int getLength() {
+			return length;
+		}
+
+		/**
+		 * Gives the buffer of the image back to the pool
+		 */
+		public void release() {
+
+			if (data != null) {
+				bufferPool.release(data);
+				data = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package communication;
+
+/**
+ * Layout of the UDP packets the images are streamed in. An encoded image is
+ * split into chunks that fit into a single datagram without IP fragmentation.
+ * Every chunk starts with a header, all values are big endian:
+ * 
+ * magic (int), type (int), kinect id (int), frame sequence (int), chunk index
+ * (short), chunk count (short)
+ * 
+ * The magic number tells chunks apart from other packets without decoding
+ * them.
+ * 
+ * The kinect id is the hash code of the Kinect Name. Has to be the same in
+ * ArgusKinect and ArgusControl.
+ * 
+ * @author Moritz Skowronski
+ *
+ */
+public class ImageChunk {
+
+	// "ARGV"
+	public static final int MAGIC = 0x41524756;
+
+	// Types of the streamed data
+	public static final int TYPE_IMAGE = 0;
+	// depth of the point cloud, encoded by the DepthCodec
+	public static final int TYPE_DEPTH = 2;
+
+	public static final int HEADER_SIZE = 20;
+
+	// Header and payload stay below the usual MTU of 1500 bytes
+	public static final int MAX_PAYLOAD = 1400;
+
+	// The streamed images have 512 x 424 pixels. Neither a JPG nor the
+	// DepthCodec needs more than 4 bytes per pixel, so a chunk count above
+	// this comes from a broken or foreign packet
+	public static final int MAX_IMAGE_SIZE = 512 * 424 * 4;
+
+	// An image can't have more chunks
+	public static final int MAX_CHUNKS = (MAX_IMAGE_SIZE + MAX_PAYLOAD - 1) / MAX_PAYLOAD;
+}
@@ -0,0 +1,213 @@
+package communication;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.imageio.ImageIO;
+
+import visualization.ImageUpdateListener;
+
+/**
+ * Decodes the images of the {@link UDPServer} on a pool of worker threads, so
+ * decoding never blocks the reception of packets. The images of different
+ * Kinects are decoded in parallel, the images of one Kinect one after the
+ * other. If a new image of a Kinect arrives while an older one is still
+ * waiting, the older one is dropped, so every Kinect shows its latest image.
+ * 
+ * @author Moritz Skowronski
+ *
+ */
+public class ImageDecoder {
+
+	private ExecutorService workers;
+
+	// <Kinect id, Kinect>, the id is the hash of the name, see ImageChunk
+	private HashMap<Integer, KinectSlot> kinects;
+
+	// number of images that were replaced by a newer one before decoding
+	private long droppedFrames;
+
+	public ImageDecoder() {
+
+		kinects = new HashMap<Integer, KinectSlot>();
+		// decoding from memory doesn't need a cache file
+		ImageIO.setUseCache(false);
+	}
+
+	/**
+	 * Starts the worker threads
+	 */
+	public synchronized void start() {
+
+		if (workers != null)
+			return;
+
+		int threads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+		workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+			private int count;
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Image Decoder " + count++);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Stops the worker threads, waiting images are released
+	 */
+	public synchronized void stop() {
+
+		if (workers == null)
+			return;
+
+		workers.shutdownNow();
+		workers = null;
+		for (KinectSlot kinect : kinects.values()) {
+			if (kinect.pending != null) {
+				kinect.pending.release();
+				kinect.pending = null;
+			}
+			kinect.decoding = false;
+		}
+	}
+
+	/**
+	 * Hands a completed image to the workers, it is released after decoding
+	 * 
+	 * @param frame
+	 */
+	public synchronized void submit(FrameReassembler.Assembly frame) {
+
+		KinectSlot kinect = kinects.get(frame.getKinectId());
+		if (workers == null || kinect == null) {
+			// Nobody shows the images of this Kinect
+			frame.release();
+			return;
+		}
+
+		if (kinect.decoding) {
+			if (kinect.pending != null) {
+				kinect.pending.release();
+				droppedFrames++;
+			}
+			kinect.pending = frame;
+		} else {
+			kinect.decoding = true;
+			workers.execute(new DecodeTask(kinect, frame));
+		}
+	}
+
+	/**
+	 * Called by a worker when an image is decoded, starts the next waiting
+	 * image of the Kinect
+	 * 
+	 * @param kinect
+	 */
+	private synchronized void decoded(KinectSlot kinect) {
+
+		FrameReassembler.Assembly next = kinect.pending;
+		kinect.pending = null;
+		if (next == null || workers == null) {
+			kinect.decoding = false;
+			if (next != null)
+				next.release();
+		} else {
+			workers.execute(new DecodeTask(kinect, next));
+		}
+	}
+
+	/**
+	 * Sets the listener receiving the images of a Kinect
+	 * 
+	 * @param kinectName
+	 * @param listener
+	 */
+	public synchronized void addListener(String kinectName, ImageUpdateListener listener) {
+
+		KinectSlot kinect = kinects.get(kinectName.hashCode());
+		if (kinect == null) {
+			kinect = new KinectSlot();
+			kinects.put(kinectName.hashCode(), kinect);
+		}
+		kinect.name = kinectName;
+		kinect.listener = listener;
+	}
+
+	/**
+	 * Returns the number of images that were replaced by a newer one before
+	 * decoding
+	 * 
+	 * @return
+	 */
+	public synchronized long getDroppedFrames() {
+		return droppedFrames;
+	}
+
+	/**
+	 * The listener and the images of one Kinect
+	 */
+	private static class KinectSlot {
+
+		private String name;
+		private volatile ImageUpdateListener listener;
+
+		// true while a worker decodes an image of this Kinect
+		private boolean decoding;
+		// the next image to decode
+		private FrameReassembler.Assembly pending;
+	}
+
+	/**
+	 * Decodes one image and passes it to the listener of its Kinect
+	 */
+	private class DecodeTask implements Runnable {
+
+		private KinectSlot kinect;
+		private FrameReassembler.Assembly frame;
+
+		DecodeTask(KinectSlot kinect, FrameReassembler.Assembly frame) {
+			this.kinect = kinect;
+			this.frame = frame;
+		}
+
+		@Override
+		public void run() {
+
+			try {
+				switch (frame.getType()) {
+				case ImageChunk.TYPE_IMAGE:
+					BufferedImage image = ImageIO.read(new ByteBufferInputStream(frame.getBuffer()));
+					if (image == null) {
+						System.err.println("Couldn't decode image " + frame.getSequence() + " of " + kinect.name);
+						return;
+					}
+					kinect.listener.updateImage(image);
+					break;
+				case ImageChunk.TYPE_DEPTH:
+					kinect.listener.updatePointCloud(frame.getBuffer());
+					break;
+				default:
+					System.out.println("Unknown UDP Input");
+					break;
+				}
+			} catch (IOException e) {
+				System.err.println("Error decoding image " + frame.getSequence() + " of " + kinect.name);
+				e.printStackTrace();
+			} catch (RuntimeException e) {
+				System.err.println("Error showing image " + frame.getSequence() + " of " + kinect.name);
+				e.printStackTrace();
+			} finally {
+				frame.release();
+				decoded(kinect);
+			}
+		}
+	}
+}
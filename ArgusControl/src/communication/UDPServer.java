@@ -1,59 +1,54 @@
 package communication;
 
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.SocketException;
-import java.util.ArrayList;
-
-import javax.imageio.ImageIO;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
 
 import visualization.ImageUpdateListener;
 
 /**
- * This class listens to all incoming UDP Broadcasts, checks whether they are
- * coming from a valid Kinect Source and returns its IP and 3 valid ports for
- * UDP, TCP and OSC Communication
+ * This class receives the images streamed by the Kinects on its own port, the
+ * broadcasts of new Kinects are answered by the {@link DiscoveryResponder}.
+ * 
+ * Packets are received into one reused direct buffer. Image chunks are
+ * recognized by their binary header and copied straight into the pooled
+ * buffer of their image. Completed images are decoded by the
+ * {@link ImageDecoder}, so this thread only receives.
  * 
  * @author Moritz Skowronski
  *
  */
 public class UDPServer implements Runnable {
 
-	private DatagramSocket socket;
-
-	private DatagramPacket sendPacket;
+	private DatagramChannel channel;
 
-	private DataInputStream dInputStream;
-	private ByteArrayInputStream bInputStream;
+	// reused for every received packet
+	private ByteBuffer receiveBuffer;
 
 	private int listenPort;
 
-	private boolean listening;
-
-	// start of answer of Server to client
-	private static final String ANSWER = "DISCOVER_SERVER_RESPONSE/";
-
-	private static final String MESSAGESTART = "DISCOVER_SERVER_REQUEST/";
+	private volatile boolean listening;
 
-	// All classes that need to know about new Kinects
-	private ArrayList<KinectConnectListener> listeners;
+	// puts the chunks of the streamed images together
+	private FrameReassembler reassembler;
 
-	private ImageUpdateListener imageListener;
+	// decodes the completed images for every Kinect
+	private ImageDecoder decoder;
 
 	public UDPServer() {
 
-		listeners = new ArrayList<KinectConnectListener>();
+		reassembler = new FrameReassembler();
+		decoder = new ImageDecoder();
+		receiveBuffer = ByteBuffer.allocateDirect(65536);
 	}
 
 	public UDPServer(int listenPort) {
 
-		listeners = new ArrayList<KinectConnectListener>();
+		this();
 		setListenPort(listenPort);
-		listening = true;
 	}
 
 	public void run() {
@@ -61,61 +56,35 @@ public class UDPServer implements Runnable {
 
 			System.out.println("UDP Server listening on Port " + listenPort);
 
-			socket = new DatagramSocket(listenPort);
-			socket.setBroadcast(true);
+			channel = DatagramChannel.open();
+			// the chunks of a whole image arrive at once
+			channel.setOption(StandardSocketOptions.SO_RCVBUF, 1 << 20);
+			channel.bind(new InetSocketAddress(listenPort));
+
+			decoder.start();
 
 			while (listening) {
 
 				// Receive a packet
-				byte[] recvBuf = new byte[65536];
-				DatagramPacket packet = new DatagramPacket(recvBuf, recvBuf.length);
-				socket.receive(packet);
-				recvBuf = packet.getData();
-
-				bInputStream = new ByteArrayInputStream(recvBuf);
-				dInputStream = new DataInputStream(bInputStream);
-				dInputStream.mark(recvBuf.length);
-
-				byte[] input = new byte[65536];
-				dInputStream.readFully(input);
-				// See if the packet holds the right command
-				String message = new String(input).trim();
-				// Connection Handling
-				if (message.startsWith("DISCOVER_SERVER_REQUEST/")) {
-					// Get Kinect Name
-					String kinectName = message.substring(MESSAGESTART.length());
-					String answer = ANSWER + (listenPort + 1);
-					byte[] sendData = answer.getBytes();
-
-					// Send a response
-					sendPacket = new DatagramPacket(sendData, sendData.length, packet.getAddress(), packet.getPort());
-					socket.send(sendPacket);
-					
-					// Notify all relevant classes about the new Kinect
-					notifyAboutNewKinect(kinectName, packet.getAddress().getHostAddress());
-				}
+				receiveBuffer.clear();
+				channel.receive(receiveBuffer);
+				receiveBuffer.flip();
+
 				// Image Handling
+				if (receiveBuffer.remaining() >= 4 && receiveBuffer.getInt(0) == ImageChunk.MAGIC) {
+					FrameReassembler.Assembly frame = reassembler.add(receiveBuffer);
+					if (frame != null)
+						decoder.submit(frame);
+				}
 				else {
-					dInputStream.reset();
-					switch (dInputStream.readInt()) {
-					case 0:
-						notifyImageUpdate(ImageIO.read(dInputStream));
-						break;
-					case 1:
-						notifyPointCloudUpdate(ImageIO.read(dInputStream));
-						break;
-					default:
-						System.out.println("Unknown UDP Input");
-						break;
-					}
+					System.out.println("Unknown UDP Input");
 				}
 
 			}
 
-		} catch (SocketException e) {
+		} catch (ClosedChannelException e) {
 			listening = false;
-			System.err.println("Error on Socket, Closed?");
-			e.printStackTrace();
+			System.err.println("UDP Channel closed");
 		} catch (IOException e) {
 			listening = false;
 			System.err.println("Error on IO Handling for UDP Broadcast Server");
@@ -129,8 +98,15 @@ public class UDPServer implements Runnable {
 	 */
 	public void interrupt() {
 		System.out.println("UDP Server shutting down");
-		socket.close();
 		listening = false;
+		decoder.stop();
+		try {
+			if (channel != null)
+				channel.close();
+		} catch (IOException e) {
+			System.err.println("Error closing UDP Channel");
+			e.printStackTrace();
+		}
 	}
 
 	/**
@@ -155,46 +131,12 @@ public class UDPServer implements Runnable {
 	/*----------------Listener Methods--------------*/
 
 	/**
-	 * Adds a new Kinect listener to the objects that are notified when theres a
-	 * new Kincet
-	 * 
-	 * @param listener
-	 *            the new Listener
-	 */
-	public void addListener(KinectConnectListener listener) {
-		this.listeners.add(listener);
-	}
-
-	/**
-	 * Adds a new Listener to the Kinect Image Listener
+	 * Sets the listener receiving the images of a Kinect
 	 * 
+	 * @param kinectName
 	 * @param listener
 	 */
-	public void addImageListener(ImageUpdateListener listener) {
-		this.imageListener = listener;
-	}
-
-	/**
-	 * Notifies the listener about Point Cloud Update
-	 * 
-	 * @param pointCloudData
-	 */
-	public void notifyPointCloudUpdate(BufferedImage pointCloudData) {
-		imageListener.updatePointCloud(pointCloudData);
-	}
-
-	/**
-	 * Notifies the listener about image Update
-	 * 
-	 * @param image
-	 */
-	public void notifyImageUpdate(BufferedImage image) {
-		imageListener.updateImage(image);
-	}
-
-	public void notifyAboutNewKinect(String name, String ip) {
-		for (KinectConnectListener kinectConnectListener : listeners) {
-			kinectConnectListener.kinectRecognized(name, ip);
-		}
+	public void addImageListener(String kinectName, ImageUpdateListener listener) {
+		decoder.addListener(kinectName, listener);
 	}
 }
@@ -11,11 +11,13 @@ import java.util.concurrent.ConcurrentHashMap;
 import com.thoughtworks.xstream.XStream;
 
 import communication.CommunicationHandler;
+import helpers.Enum.AssignmentMode;
 import helpers.Enum.Streams;
 import scene.AbstractTriggerZone;
 import scene.Person;
 import scene.SceneHandler;
 import scene.TriggerBox;
+import visualization.ImageUpdateListener;
 import visualization.InteractiveTriggerbox;
 
 /**
@@ -142,6 +144,87 @@ public class Control {
 		update(activeKinect);
 	}
 
+	/**
+	 * Sets the distance between two pixels sampled for the triggerzones
+	 * 
+	 * @param activeKinect
+	 * @param i
+	 */
+	public void setSamplingStride(String activeKinect, int i) {
+		settings.get(activeKinect).setSamplingStride(Math.max(1, i));
+		update(activeKinect);
+	}
+
+	/**
+	 * Sets whether samples near the border of a triggerzone are refined
+	 * 
+	 * @param activeKinect
+	 * @param isActive
+	 */
+	public void setAdaptiveSampling(String activeKinect, boolean isActive) {
+		settings.get(activeKinect).setAdaptiveSampling(isActive);
+		update(activeKinect);
+	}
+
+	/**
+	 * Sets whether new persons are assigned greedily or with the Hungarian
+	 * method
+	 * 
+	 * @param activeKinect
+	 * @param mode
+	 */
+	public void setAssignmentMode(String activeKinect, AssignmentMode mode) {
+		settings.get(activeKinect).setAssignmentMode(mode);
+		update(activeKinect);
+	}
+
+	/**
+	 * Sets the maximum distance of a person between two frames
+	 * 
+	 * @param activeKinect
+	 * @param f
+	 *            in millimeters
+	 */
+	public void setIdRadius(String activeKinect, float f) {
+		settings.get(activeKinect).setIdRadius(Math.max(1, f));
+		update(activeKinect);
+	}
+
+	/**
+	 * Sets how many frames a person that isn't detected anymore is kept
+	 * 
+	 * @param activeKinect
+	 * @param i
+	 */
+	public void setMaxLostFrames(String activeKinect, int i) {
+		settings.get(activeKinect).setMaxLostFrames(Math.max(0, i));
+		update(activeKinect);
+	}
+
+	/**
+	 * Sets how many standard deviations a pixel has to differ from the
+	 * background to be recognized as change
+	 * 
+	 * @param activeKinect
+	 * @param f
+	 */
+	public void setDeviationFactor(String activeKinect, float f) {
+		settings.get(activeKinect).setDeviationFactor(Math.max(0.1f, f));
+		update(activeKinect);
+	}
+
+	/**
+	 * Sets how fast the background follows slow changes of the scene, 0
+	 * disables learning
+	 * 
+	 * @param activeKinect
+	 * @param f
+	 */
+	public void setLearningRate(String activeKinect, float f) {
+		settings.get(activeKinect).setLearningRate(Math.max(0, Math.min(1, f)));
+		update(activeKinect);
+	}
+
 	/**
 	 * Sets whether Tracking should run
 	 * 
@@ -170,6 +253,16 @@ public class Control {
 		settings.put(name, new Settings());
 	}
 
+	/**
+	 * Sets the listener receiving the streamed images of the given Kinect
+	 * 
+	 * @param name
+	 * @param listener
+	 */
+	public void addImageListener(String name, ImageUpdateListener listener) {
+		communicationHandler.addImageListener(name, listener);
+	}
+
 	public void sendSettingsOnTCPConnect(String name) {
 
 		File loadedFile = new File("./data/" + name + ".xml");
@@ -189,6 +282,20 @@ public class Control {
 			setStreaming(name, temporarySettings.getStreamMode());
 			setThreshold(name, temporarySettings.getThreshold());
 			setTracking(name, temporarySettings.isTracking());
+			// settings saved before the stride existed load it as 0
+			if (temporarySettings.getSamplingStride() > 0)
+				setSamplingStride(name, temporarySettings.getSamplingStride());
+			setAdaptiveSampling(name, temporarySettings.isAdaptiveSampling());
+			// settings saved before the tracking parameters existed
+			if (temporarySettings.getAssignmentMode() != null)
+				setAssignmentMode(name, temporarySettings.getAssignmentMode());
+			if (temporarySettings.getIdRadius() > 0)
+				setIdRadius(name, temporarySettings.getIdRadius());
+			setMaxLostFrames(name, temporarySettings.getMaxLostFrames());
+			// settings saved before the background parameters existed
+			if (temporarySettings.getDeviationFactor() > 0)
+				setDeviationFactor(name, temporarySettings.getDeviationFactor());
+			setLearningRate(name, temporarySettings.getLearningRate());
 
 			temporaryZones.put(name, temporarySettings.getTriggerZones());
 			triggerzonesChanged = true;
@@ -15,9 +15,12 @@ import visualization.InteractiveTriggerbox;
 
 import scene.Person;
 import scene.TriggerBox;
+import scene.TriggerCylinder;
+import scene.TriggerPolyhedron;
 import scene.AbstractTriggerZone;
 
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -27,6 +30,7 @@ import communication.OSCSender;
 
 import controlP5.*;
 
+import helpers.Enum.AssignmentMode;
 import helpers.Enum.DisplayMode;
 import helpers.Enum.Streams;
 import helpers.KinectTransformations;
@@ -52,6 +56,13 @@ public class Display extends PApplet implements KinectConnectListener {
 	private Toggle multiCameraCalibration;
 	private Slider threshold;
 	private Slider contoursize;
+	private Slider samplingStride;
+	private Toggle adaptiveSampling;
+	private Slider idRadius;
+	private Toggle hungarianAssignment;
+	private Slider maxLostFrames;
+	private Slider deviationFactor;
+	private Slider learningRate;
 	private Toggle startTracking;
 
 	private Textfield receivePort;
@@ -73,6 +84,7 @@ public class Display extends PApplet implements KinectConnectListener {
 
 	private ScrollableList triggerzoneList;
 	private Bang addTriggerzone;
+	private Bang addTriggercylinder;
 	private Bang deleteTriggerzone;
 	private Numberbox triggerzoneX;
 	private Numberbox triggerzoneY;
@@ -104,7 +116,12 @@ public class Display extends PApplet implements KinectConnectListener {
 
 	/*-----------------------Images----------------*/
 
+	// <Kinect name, streamed images of the Kinect>
+	private ConcurrentHashMap<String, KinectImage> kinectImages;
+	// images of the active Kinect, never null
 	private KinectImage imageFromKinect;
+	// shown while the active Kinect has no images yet
+	private KinectImage emptyImage;
 	private PImage streamingImage;
 
 	/*----Used to Display Point Cloud & Triggerzones and make them interactive----*/
@@ -117,6 +134,9 @@ public class Display extends PApplet implements KinectConnectListener {
 
 		this.controller = controller;
 		activeKinect = null;
+		kinectImages = new ConcurrentHashMap<String, KinectImage>();
+		emptyImage = new KinectImage(this);
+		imageFromKinect = emptyImage;
 		displaySwitch = DisplayMode.Server;
 		streamingImage = createImage(682, 565, ARGB);
 	}
@@ -158,28 +178,64 @@ public class Display extends PApplet implements KinectConnectListener {
 		/*--------------------Local Kinect Settings------------------*/
 
 		startDepthCalibration = new Toggle(guiControl, "startDepthCalibration");
-		startDepthCalibration.setPosition(50, 720).setSize(200, 100).setCaptionLabel("Depth Calibration")
+		startDepthCalibration.setPosition(50, 715).setSize(200, 20).setCaptionLabel("Depth Calibration")
 				.align(ControlP5.CENTER, ControlP5.CENTER, ControlP5.CENTER, ControlP5.CENTER);
 
+		deviationFactor = new Slider(guiControl, "deviationFactor");
+		deviationFactor.setPosition(50, 750).setRange(1, 6).setSize(200, 20).setCaptionLabel("Deviation Factor")
+				.setDecimalPrecision(1).setColorActive(controlColor2).setColorForeground(extraColor)
+				.align(ControlP5.BOTTOM_OUTSIDE, ControlP5.BOTTOM_OUTSIDE, ControlP5.BOTTOM_OUTSIDE,
+						ControlP5.BOTTOM_OUTSIDE);
+
+		learningRate = new Slider(guiControl, "learningRate");
+		learningRate.setPosition(50, 785).setRange(0, 0.01f).setSize(200, 20).setCaptionLabel("Learning Rate")
+				.setDecimalPrecision(4).setColorActive(controlColor2).setColorForeground(extraColor)
+				.align(ControlP5.BOTTOM_OUTSIDE, ControlP5.BOTTOM_OUTSIDE, ControlP5.BOTTOM_OUTSIDE,
+						ControlP5.BOTTOM_OUTSIDE);
+
 		multiCameraCalibration = new Toggle(guiControl, "multiCameraCalibration");
 		multiCameraCalibration.setPosition(321, 720).setSize(200, 100).setCaptionLabel("Camera Calibration")
 				.align(ControlP5.CENTER, ControlP5.CENTER, ControlP5.CENTER, ControlP5.CENTER);
 
 		threshold = new Slider(guiControl, "threshold");
-		threshold.setPosition(592, 720).setRange(5, 1000).setSize(200, 20).setCaptionLabel("Threshold")
+		threshold.setPosition(592, 715).setRange(5, 1000).setSize(200, 20).setCaptionLabel("Threshold")
 				.setDecimalPrecision(1).setColorActive(controlColor2).setColorForeground(extraColor)
 				.align(ControlP5.BOTTOM_OUTSIDE, ControlP5.BOTTOM_OUTSIDE, ControlP5.BOTTOM_OUTSIDE,
 						ControlP5.BOTTOM_OUTSIDE);
 
 		contoursize = new Slider(guiControl, "contoursize");
-		contoursize.setPosition(592, 780).setRange(1000, 100000).setSize(200, 20).setCaptionLabel("Minimum Contoursize")
+		contoursize.setPosition(592, 750).setRange(1000, 100000).setSize(200, 20).setCaptionLabel("Minimum Contoursize")
 				.setColorActive(controlColor2).setColorForeground(extraColor).align(ControlP5.BOTTOM_OUTSIDE,
 						ControlP5.BOTTOM_OUTSIDE, ControlP5.BOTTOM_OUTSIDE, ControlP5.BOTTOM_OUTSIDE);
 
+		samplingStride = new Slider(guiControl, "samplingStride");
+		samplingStride.setPosition(592, 785).setRange(1, 8).setSize(150, 20).setCaptionLabel("Sampling Stride")
+				.setDecimalPrecision(0).setColorActive(controlColor2).setColorForeground(extraColor)
+				.align(ControlP5.BOTTOM_OUTSIDE, ControlP5.BOTTOM_OUTSIDE, ControlP5.BOTTOM_OUTSIDE,
+						ControlP5.BOTTOM_OUTSIDE);
+
+		adaptiveSampling = new Toggle(guiControl, "adaptiveSampling");
+		adaptiveSampling.setPosition(752, 785).setSize(40, 20).setCaptionLabel("Adaptive");
+
 		startTracking = new Toggle(guiControl, "startTracking");
-		startTracking.setPosition(863, 720).setSize(200, 100).setCaptionLabel("Start Tracking").align(ControlP5.CENTER,
+		startTracking.setPosition(863, 715).setSize(200, 20).setCaptionLabel("Start Tracking").align(ControlP5.CENTER,
 				ControlP5.CENTER, ControlP5.CENTER, ControlP5.CENTER);
 
+		idRadius = new Slider(guiControl, "idRadius");
+		idRadius.setPosition(863, 750).setRange(100, 2000).setSize(150, 20).setCaptionLabel("ID Radius")
+				.setDecimalPrecision(0).setColorActive(controlColor2).setColorForeground(extraColor)
+				.align(ControlP5.BOTTOM_OUTSIDE, ControlP5.BOTTOM_OUTSIDE, ControlP5.BOTTOM_OUTSIDE,
+						ControlP5.BOTTOM_OUTSIDE);
+
+		hungarianAssignment = new Toggle(guiControl, "hungarianAssignment");
+		hungarianAssignment.setPosition(1023, 750).setSize(40, 20).setCaptionLabel("Hungarian");
+
+		maxLostFrames = new Slider(guiControl, "maxLostFrames");
+		maxLostFrames.setPosition(863, 785).setRange(0, 30).setSize(200, 20).setCaptionLabel("Lost Frames")
+				.setDecimalPrecision(0).setColorActive(controlColor2).setColorForeground(extraColor)
+				.align(ControlP5.BOTTOM_OUTSIDE, ControlP5.BOTTOM_OUTSIDE, ControlP5.BOTTOM_OUTSIDE,
+						ControlP5.BOTTOM_OUTSIDE);
+
 		/*-------------------Global Kinect Settings-----------------*/
 
 		kinects = new ButtonBar(guiControl, "kinects");
@@ -244,12 +300,17 @@ public class Display extends PApplet implements KinectConnectListener {
 				.setItemHeight(30).hide();
 
 		addTriggerzone = new Bang(guiControl, "addTriggerzone");
-		addTriggerzone.setPosition(10, 410).setSize(155, 30).setCaptionLabel("Add")
+		addTriggerzone.setPosition(10, 410).setSize(100, 30).setCaptionLabel("Add Box")
+				.align(ControlP5.CENTER, ControlP5.CENTER, ControlP5.CENTER, ControlP5.CENTER)
+				.setColorForeground(backgroundColor).hide();
+
+		addTriggercylinder = new Bang(guiControl, "addTriggercylinder");
+		addTriggercylinder.setPosition(126, 410).setSize(100, 30).setCaptionLabel("Add Cylinder")
 				.align(ControlP5.CENTER, ControlP5.CENTER, ControlP5.CENTER, ControlP5.CENTER)
 				.setColorForeground(backgroundColor).hide();
 
 		deleteTriggerzone = new Bang(guiControl, "deleteTriggerzone");
-		deleteTriggerzone.setPosition(185, 410).setSize(155, 30).setCaptionLabel("Delete")
+		deleteTriggerzone.setPosition(242, 410).setSize(100, 30).setCaptionLabel("Delete")
 				.align(ControlP5.CENTER, ControlP5.CENTER, ControlP5.CENTER, ControlP5.CENTER)
 				.setColorForeground(backgroundColor).hide();
 
@@ -336,7 +397,9 @@ public class Display extends PApplet implements KinectConnectListener {
 		testForNewBackgroundZones();
 
 		if (activeKinect != null) {
-			if (imageFromKinect != null && imageFromKinect.hasNew()) {
+			KinectImage image = kinectImages.get(activeKinect);
+			imageFromKinect = image != null ? image : emptyImage;
+			if (imageFromKinect.hasNew()) {
 				if (activeImage != null && activeImage != pointCloud)
 					streamingImage = imageFromKinect.getImage();
 			}
@@ -368,13 +431,27 @@ public class Display extends PApplet implements KinectConnectListener {
 				Entry<String, AbstractTriggerZone[]> entry = iterator.next();
 				AbstractTriggerZone[] zones = entry.getValue();
 
-				int parsedInt = 0;
+				// every kind of zone counts its ids separately
+				int boxCounter = 0;
+				int cylinderCounter = 0;
+				int polyhedronCounter = 0;
 				for (int i = 0; i < zones.length; i++) {
 					controller.addTriggerZone(zones[i], entry.getKey());
-					parsedInt = Integer.parseInt(zones[i].getID().substring(11));
+					String id = zones[i].getID();
+					int parsedInt = Integer.parseInt(id.substring(id.lastIndexOf(' ') + 1));
+					if (zones[i] instanceof TriggerCylinder)
+						cylinderCounter = Math.max(cylinderCounter, parsedInt + 1);
+					else if (zones[i] instanceof TriggerPolyhedron)
+						polyhedronCounter = Math.max(polyhedronCounter, parsedInt + 1);
+					else
+						boxCounter = Math.max(boxCounter, parsedInt + 1);
 				}
 				iterator.remove();
-				TriggerBox.setStartCounter(++parsedInt);
+				TriggerBox.setStartCounter(boxCounter);
+				if (cylinderCounter > 0)
+					TriggerCylinder.setStartCounter(cylinderCounter);
+				if (polyhedronCounter > 0)
+					TriggerPolyhedron.setStartCounter(polyhedronCounter);
 			}
 		}
 	}
@@ -461,6 +538,7 @@ public class Display extends PApplet implements KinectConnectListener {
 
 		if (drawPointCloud) {
 
+			PVector point = new PVector();
 			for (int x = 0; x < 512; x += 4) {
 				for (int y = 0; y < 424; y += 4) {
 					// calculate the x, y, z camera position based on
@@ -468,7 +546,7 @@ public class Display extends PApplet implements KinectConnectListener {
 					// depth
 					// information
 
-					PVector point = KinectTransformations.depthToPointCloudPos(x, y, depthData[y / 4 * 256/2 + x / 4]);
+					KinectTransformations.depthToPointCloudPos(x, y, depthData[y / 4 * 256/2 + x / 4], point);
 
 					// Draw a point (using line instead because it is
 					// faster)
@@ -571,6 +649,15 @@ public class Display extends PApplet implements KinectConnectListener {
 		rect(threshold.getPosition()[0], threshold.getPosition()[1], threshold.getWidth(), threshold.getHeight());
 		rect(contoursize.getPosition()[0], contoursize.getPosition()[1], contoursize.getWidth(),
 				contoursize.getHeight());
+		rect(samplingStride.getPosition()[0], samplingStride.getPosition()[1], samplingStride.getWidth(),
+				samplingStride.getHeight());
+		rect(deviationFactor.getPosition()[0], deviationFactor.getPosition()[1], deviationFactor.getWidth(),
+				deviationFactor.getHeight());
+		rect(learningRate.getPosition()[0], learningRate.getPosition()[1], learningRate.getWidth(),
+				learningRate.getHeight());
+		rect(idRadius.getPosition()[0], idRadius.getPosition()[1], idRadius.getWidth(), idRadius.getHeight());
+		rect(maxLostFrames.getPosition()[0], maxLostFrames.getPosition()[1], maxLostFrames.getWidth(),
+				maxLostFrames.getHeight());
 		// Side Dock
 		rect(0, 0, 350, 645);
 		// Image Holder
@@ -635,6 +722,14 @@ public class Display extends PApplet implements KinectConnectListener {
 					startTracking.setValue(kinectSettings.isTracking());
 					threshold.setValue(kinectSettings.getThreshold());
 					contoursize.setValue(kinectSettings.getMinimumContourSize());
+					samplingStride.setValue(kinectSettings.getSamplingStride());
+					adaptiveSampling.setValue(kinectSettings.isAdaptiveSampling());
+					idRadius.setValue(kinectSettings.getIdRadius());
+					hungarianAssignment
+							.setValue(kinectSettings.getAssignmentMode() == AssignmentMode.HUNGARIAN);
+					maxLostFrames.setValue(kinectSettings.getMaxLostFrames());
+					deviationFactor.setValue(kinectSettings.getDeviationFactor());
+					learningRate.setValue(kinectSettings.getLearningRate());
 					startDepthCalibration.setValue(kinectSettings.isRunCalibration());
 					multiCameraCalibration.setValue(kinectSettings.isRunMultiKinectCalibration());
 				}
@@ -653,6 +748,13 @@ public class Display extends PApplet implements KinectConnectListener {
 			startTracking.setValue(false);
 			threshold.setValue(0);
 			contoursize.setValue(0);
+			samplingStride.setValue(0);
+			adaptiveSampling.setValue(false);
+			idRadius.setValue(0);
+			hungarianAssignment.setValue(false);
+			maxLostFrames.setValue(0);
+			deviationFactor.setValue(0);
+			learningRate.setValue(0);
 			startDepthCalibration.setValue(false);
 			multiCameraCalibration.setValue(false);
 		}
@@ -803,6 +905,83 @@ public class Display extends PApplet implements KinectConnectListener {
 		}
 	}
 
+	/**
+	 * Event Handler for Sampling Stride Slider
+	 * 
+	 * @param i
+	 */
+	public void samplingStride(int i) {
+		if (activeKinect != null) {
+			controller.setSamplingStride(activeKinect, i);
+		}
+	}
+
+	/**
+	 * Event Handler for Adaptive Sampling Toggle
+	 * 
+	 * @param isActive
+	 */
+	public void adaptiveSampling(boolean isActive) {
+		if (activeKinect != null) {
+			controller.setAdaptiveSampling(activeKinect, isActive);
+		}
+	}
+
+	/**
+	 * Event Handler for ID Radius Slider
+	 * 
+	 * @param f
+	 */
+	public void idRadius(float f) {
+		if (activeKinect != null) {
+			controller.setIdRadius(activeKinect, f);
+		}
+	}
+
+	/**
+	 * Event Handler for Hungarian Assignment Toggle
+	 * 
+	 * @param isActive
+	 */
+	public void hungarianAssignment(boolean isActive) {
+		if (activeKinect != null) {
+			controller.setAssignmentMode(activeKinect, isActive ? AssignmentMode.HUNGARIAN : AssignmentMode.GREEDY);
+		}
+	}
+
+	/**
+	 * Event Handler for Deviation Factor Slider
+	 * 
+	 * @param f
+	 */
+	public void deviationFactor(float f) {
+		if (activeKinect != null) {
+			controller.setDeviationFactor(activeKinect, f);
+		}
+	}
+
+	/**
+	 * Event Handler for Learning Rate Slider
+	 * 
+	 * @param f
+	 */
+	public void learningRate(float f) {
+		if (activeKinect != null) {
+			controller.setLearningRate(activeKinect, f);
+		}
+	}
+
+	/**
+	 * Event Handler for Lost Frames Slider
+	 * 
+	 * @param i
+	 */
+	public void maxLostFrames(int i) {
+		if (activeKinect != null) {
+			controller.setMaxLostFrames(activeKinect, i);
+		}
+	}
+
 	/**
 	 * Event Handler for Start Tracking Toggle
 	 * 
@@ -832,6 +1011,14 @@ public class Display extends PApplet implements KinectConnectListener {
 		if (!alreadyConnected) {
 			kinects.addItem(name, templist.size());
 			controller.kinectRecognized(name, ip);
+
+			// Every Kinect streams into its own image
+			KinectImage image = kinectImages.get(name);
+			if (image == null) {
+				image = new KinectImage(this);
+				kinectImages.put(name, image);
+			}
+			controller.addImageListener(name, image);
 		}
 	}
 
@@ -923,15 +1110,6 @@ public class Display extends PApplet implements KinectConnectListener {
 		streamingImage.updatePixels();
 	}
 
-	/**
-	 * Sets the imageHandler from which the Kinect Stream is derived
-	 * 
-	 * @param image
-	 */
-	public void setImageFromKinect(KinectImage image) {
-		this.imageFromKinect = image;
-	}
-
 	/**
 	 * Handler for change Settings "Buttonbar"
 	 * 
@@ -946,6 +1124,7 @@ public class Display extends PApplet implements KinectConnectListener {
 			sendIP.show();
 			sendPort.show();
 			addTriggerzone.hide();
+			addTriggercylinder.hide();
 			deleteTriggerzone.hide();
 			triggerzoneList.hide();
 			triggerzoneDepth.hide();
@@ -979,6 +1158,7 @@ public class Display extends PApplet implements KinectConnectListener {
 			sendIP.hide();
 			sendPort.hide();
 			addTriggerzone.show();
+			addTriggercylinder.show();
 			deleteTriggerzone.show();
 			triggerzoneList.show();
 			triggerzoneDepth.show();
@@ -1017,6 +1197,24 @@ public class Display extends PApplet implements KinectConnectListener {
 
 	}
 
+	/**
+	 * Event Handler for "add Triggercylinder" Button. Polyhedra can only be
+	 * loaded from the settings, since their faces can't be edited here
+	 */
+	public void addTriggercylinder() {
+
+		AbstractTriggerZone zone = new TriggerCylinder(0, 0, 2000, 400, 400, 0);
+		// Add only if a Kinect and Image are selected
+		if (activeKinect != null) {
+			if (activeImage != null) {
+
+				controller.addTriggerZone(zone, activeKinect);
+				updateZoneList();
+			}
+		}
+		controller.updateTriggerzones(activeKinect);
+	}
+
 	/**
 	 * Changes the values of the numberboxes if the value of the scrollable list
 	 * changes.
@@ -1034,6 +1232,16 @@ public class Display extends PApplet implements KinectConnectListener {
 
 		float[] size = triggerzone.getSize();
 
+		// a cylinder uses the size boxes for its radius, height and crop
+		// radius
+		if (triggerzone instanceof TriggerCylinder) {
+			triggerzoneWidth.setCaptionLabel("Radius");
+			triggerzoneDepth.setCaptionLabel("Crop Radius");
+		} else {
+			triggerzoneWidth.setCaptionLabel("Width");
+			triggerzoneDepth.setCaptionLabel("Depth");
+		}
+
 		triggerzoneDepth.setValue(size[2]);
 		triggerzoneHeight.setValue(size[1]);
 		triggerzoneWidth.setValue(size[0]);
@@ -1,12 +1,12 @@
 package control;
 
 import communication.CommunicationHandler;
+import communication.DiscoveryResponder;
 import communication.OSCSender;
 import communication.TCPServer;
 import communication.UDPServer;
 import processing.core.PApplet;
 import scene.SceneHandler;
-import visualization.KinectImage;
 
 public class Main {
 
@@ -14,10 +14,11 @@ public class Main {
 
 		TCPServer tcpServer = new TCPServer();
 
+		DiscoveryResponder discoveryResponder = new DiscoveryResponder();
 		UDPServer udpServer = new UDPServer();
 		SceneHandler sceneHandler = new SceneHandler();
 		
-		CommunicationHandler communicationHandler = new CommunicationHandler(udpServer, tcpServer, sceneHandler);
+		CommunicationHandler communicationHandler = new CommunicationHandler(discoveryResponder, udpServer, tcpServer, sceneHandler);
 
 		Control control = new Control(communicationHandler, sceneHandler);
 		
@@ -26,11 +27,8 @@ public class Main {
 		String[] runString = { "run" };
 		Display display = new Display(control);
 		OSCSender.p = display;
-		KinectImage imageStream = new KinectImage(display);
-		display.setImageFromKinect(imageStream);
-		udpServer.addImageListener(imageStream);
 
-		udpServer.addListener(display);
+		discoveryResponder.addListener(display);
 
 		// Start the Display Thread and Processing
 		PApplet.runSketch(runString, display);
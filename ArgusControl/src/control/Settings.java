@@ -1,6 +1,7 @@
 package control;
 
 import java.io.Serializable;
+import helpers.Enum.AssignmentMode;
 import helpers.Enum.Streams;
 import scene.AbstractTriggerZone;
 
@@ -28,6 +29,23 @@ public class Settings implements Serializable {
 
 	private boolean runMultiKinectCalibration;
 
+	// distance between two sampled pixels of a person
+	private int samplingStride;
+	// refine samples near the border of a triggerzone
+	private boolean adaptiveSampling;
+
+	// how new persons are assigned to the persons of the last frame
+	private AssignmentMode assignmentMode;
+	// maximum distance of a person between two frames
+	private float idRadius;
+	// frames a person that isn't detected anymore is kept before it leaves
+	private int maxLostFrames;
+
+	// standard deviations a pixel has to differ from the background
+	private float deviationFactor;
+	// how fast the background follows the scene, 0 disables learning
+	private float learningRate;
+
 	/**
 	 * Start up with default Settings
 	 */
@@ -39,6 +57,13 @@ public class Settings implements Serializable {
 		triggerZones = new AbstractTriggerZone[0];
 		streamMode = Streams.NOSEND;
 		runMultiKinectCalibration = false;
+		samplingStride = 2;
+		adaptiveSampling = false;
+		assignmentMode = AssignmentMode.GREEDY;
+		idRadius = 500;
+		maxLostFrames = 5;
+		deviationFactor = 3;
+		learningRate = 0;
 	}
 
 	// *------------------------Getter & Setter------------------*/
@@ -100,4 +125,60 @@ public class Settings implements Serializable {
 		this.isTracking = isTracking;
 	}
 
+	public int getSamplingStride() {
+		return samplingStride;
+	}
+
+	public void setSamplingStride(int samplingStride) {
+		this.samplingStride = samplingStride;
+	}
+
+	public boolean isAdaptiveSampling() {
+		return adaptiveSampling;
+	}
+
+	public void setAdaptiveSampling(boolean adaptiveSampling) {
+		this.adaptiveSampling = adaptiveSampling;
+	}
+
+	public AssignmentMode getAssignmentMode() {
+		return assignmentMode;
+	}
+
+	public void setAssignmentMode(AssignmentMode assignmentMode) {
+		this.assignmentMode = assignmentMode;
+	}
+
+	public float getIdRadius() {
+		return idRadius;
+	}
+
+	public void setIdRadius(float idRadius) {
+		this.idRadius = idRadius;
+	}
+
+	public int getMaxLostFrames() {
+		return maxLostFrames;
+	}
+
+	public void setMaxLostFrames(int maxLostFrames) {
+		this.maxLostFrames = maxLostFrames;
+	}
+
+	public float getDeviationFactor() {
+		return deviationFactor;
+	}
+
+	public void setDeviationFactor(float deviationFactor) {
+		this.deviationFactor = deviationFactor;
+	}
+
+	public float getLearningRate() {
+		return learningRate;
+	}
+
+	public void setLearningRate(float learningRate) {
+		this.learningRate = learningRate;
+	}
+
 }
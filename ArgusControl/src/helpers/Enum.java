@@ -24,6 +24,11 @@ public class Enum {
 		DEPTH, INFRARED, PERSON, MASK, POINTCLOUD, NOSEND
 	}
 
+	// Has to be the same as in ArgusKinect, it is part of the Settings
+	public enum AssignmentMode {
+		GREEDY, HUNGARIAN
+	}
+
 	public enum DisplayMode {
 		Server, Triggerzone
 	}
@@ -20,6 +20,57 @@ public class KinectTransformations {
 	private static final float P1 = 0.0f;
 	private static final float P2 = 0.0f;
 
+	// Resolution of the depth image
+	public static final int DEPTH_WIDTH = 512;
+	public static final int DEPTH_HEIGHT = 424;
+
+	// Undistorted (x - CX) / FX and (y - CY) / FY for every pixel of the
+	// depth image, so the world position of a pixel is its depth times these
+	// factors
+	private static final float[] RAY_X = new float[DEPTH_WIDTH * DEPTH_HEIGHT];
+	private static final float[] RAY_Y = new float[DEPTH_WIDTH * DEPTH_HEIGHT];
+
+	// Iterations used to invert the lens distortion
+	private static final int UNDISTORT_ITERATIONS = 10;
+
+	static {
+		for (int y = 0; y < DEPTH_HEIGHT; y++) {
+			for (int x = 0; x < DEPTH_WIDTH; x++) {
+				int offset = y * DEPTH_WIDTH + x;
+				undistort((x - CX) / FX, (y - CY) / FY, offset);
+			}
+		}
+	}
+
+	/**
+	 * Removes the radial (K1, K2, K3) and tangential (P1, P2) lens distortion
+	 * from a normalized image position and stores it in the ray tables. The
+	 * distortion model can't be inverted directly, so the undistorted position
+	 * is found iteratively
+	 * 
+	 * @param distortedX
+	 *            (x - cx) / fx of the pixel
+	 * @param distortedY
+	 *            (y - cy) / fy of the pixel
+	 * @param offset
+	 *            y * DEPTH_WIDTH + x
+	 */
+	private static void undistort(float distortedX, float distortedY, int offset) {
+
+		float x = distortedX;
+		float y = distortedY;
+		for (int i = 0; i < UNDISTORT_ITERATIONS; i++) {
+			float r2 = x * x + y * y;
+			float radial = 1 + r2 * (K1 + r2 * (K2 + r2 * K3));
+			float dx = 2 * P1 * x * y + P2 * (r2 + 2 * x * x);
+			float dy = P1 * (r2 + 2 * y * y) + 2 * P2 * x * y;
+			x = (distortedX - dx) / radial;
+			y = (distortedY - dy) / radial;
+		}
+		RAY_X[offset] = x;
+		RAY_Y[offset] = y;
+	}
+
 	/**
 	 * Transforms the x and y values of the kinect into real world values using
 	 * values derived from testing. TODO implement a camera calibration for
@@ -35,10 +86,32 @@ public class KinectTransformations {
 	 */
 	public static PVector depthToPointCloudPos(int x, int y, float depthValue) {
 
-		PVector point = new PVector();
+		return depthToPointCloudPos(x, y, depthValue, new PVector());
+	}
+
+	/**
+	 * Transforms the x and y values of the kinect into real world values
+	 * without allocating a new vector. Positions outside of the depth image
+	 * are clamped to its border
+	 * 
+	 * @param x
+	 *            the pixel x position, between 0 and DEPTH_WIDTH - 1
+	 * @param y
+	 *            the pixel y position, between 0 and DEPTH_HEIGHT - 1
+	 * @param depthValue
+	 *            the depthvalue in milimeters
+	 * @param point
+	 *            is filled with the result
+	 * @return the given point
+	 */
+	public static PVector depthToPointCloudPos(int x, int y, float depthValue, PVector point) {
+
+		x = Math.max(0, Math.min(x, DEPTH_WIDTH - 1));
+		y = Math.max(0, Math.min(y, DEPTH_HEIGHT - 1));
+		int offset = y * DEPTH_WIDTH + x;
+		point.x = RAY_X[offset] * depthValue;
+		point.y = RAY_Y[offset] * depthValue;
 		point.z = depthValue;
-		point.x = (x - CX) * point.z / FX;
-		point.y = (y - CY) * point.z / FY;
 		return point;
 	}
 
@@ -56,10 +129,21 @@ public class KinectTransformations {
 	 */
 	public static PVector PointCloudToDepthPos(float x, float y, float depthValue) {
 
+		// Apply the lens distortion, so the position matches the pixel the
+		// depth was read from
+		float undistortedX = x / depthValue;
+		float undistortedY = y / depthValue;
+		float r2 = undistortedX * undistortedX + undistortedY * undistortedY;
+		float radial = 1 + r2 * (K1 + r2 * (K2 + r2 * K3));
+		float distortedX = undistortedX * radial + 2 * P1 * undistortedX * undistortedY
+				+ P2 * (r2 + 2 * undistortedX * undistortedX);
+		float distortedY = undistortedY * radial + P1 * (r2 + 2 * undistortedY * undistortedY)
+				+ 2 * P2 * undistortedX * undistortedY;
+
 		PVector point = new PVector();
 		point.z = depthValue;
-		point.x = (int) (x * FX / point.z) + CX;
-		point.y = (int) (y * FY / point.z) + CY;
+		point.x = (int) (distortedX * FX) + CX;
+		point.y = (int) (distortedY * FY) + CY;
 		return point;
 	}
 
@@ -0,0 +1,245 @@
+package scene;
+
+import java.io.Serializable;
+import java.util.HashMap;
+
+import remixlab.dandelion.geom.Mat;
+import remixlab.dandelion.geom.Quat;
+
+/**
+ * A cylinder shaped Triggerzone, standing upright along its y axis. A crop
+ * radius bigger than 0 removes the inner part, so the cylinder becomes a ring.
+ * 
+ * @author Moritz Skowronski
+ *
+ */
+public class TriggerCylinder extends AbstractTriggerZone implements Serializable {
+
+	private static final long serialVersionUID = 4821036917153329176L;
+
+	private static int triggerCylinderCounter = 0;
+
+	private String id;
+
+	// center of the cylinder
+	private float x;
+	private float y;
+	private float z;
+
+	private float radius;
+	private float height;
+	private float cropRadius;
+
+	private float rotateX;
+	private float rotateY;
+	private float rotateZ;
+
+	private long lastUpdate;
+
+	// color
+	private int color;
+
+	// amount of PersonPoints in the Cylinder
+	private int depthPointsInBox;
+
+	// <PersonID, Points of that Person>
+	private HashMap<Integer, Integer> pointsPerPerson;
+
+	/**
+	 * Constructs a new TriggerCylinder
+	 * 
+	 * @param x
+	 *            x Position
+	 * @param y
+	 *            y Position
+	 * @param z
+	 *            z Position
+	 * @param radius
+	 *            outer radius
+	 * @param height
+	 *            height along the axis
+	 * @param cropRadius
+	 *            inner radius, 0 for a solid cylinder
+	 */
+	public TriggerCylinder(float x, float y, float z, float radius, float height, float cropRadius) {
+		this.id = "Triggercylinder " + triggerCylinderCounter++;
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.rotateX = 0;
+		this.rotateY = 0;
+		this.rotateZ = 0;
+		this.radius = radius;
+		this.height = height;
+		this.cropRadius = cropRadius;
+
+		pointsPerPerson = new HashMap<Integer, Integer>();
+
+		// Make random color for better visualization
+		int r = (int) (Math.random() * 256);
+		int g = (int) (Math.random() * 256);
+		int b = (int) (Math.random() * 256);
+		int a = 255;
+		a = a << 24;
+		r = r << 16;
+		g = g << 8;
+		color = (a | r | g | b);
+
+		lastUpdate = System.currentTimeMillis();
+	}
+
+	/*-------------Setters--------------*/
+
+	@Override
+	public void setID(String id) {
+		this.id = id;
+	}
+
+	@Override
+	public void setX(float x) {
+		this.x = x;
+	}
+
+	@Override
+	public void setY(float y) {
+		this.y = y;
+	}
+
+	@Override
+	public void setZ(float z) {
+		this.z = z;
+	}
+
+	@Override
+	public void setRotateX(float x) {
+
+		this.rotateX = x;
+	}
+
+	@Override
+	public void setRotateY(float y) {
+
+		this.rotateY = y;
+	}
+
+	@Override
+	public void setRotateZ(float z) {
+
+		this.rotateZ = z;
+	}
+
+	@Override
+	public void setSize(float radius, float height, float cropRadius) {
+		this.radius = radius;
+		this.height = height;
+		this.cropRadius = cropRadius;
+	}
+
+	@Override
+	public void setColor(int col) {
+		this.color = col;
+	}
+
+	@Override
+	public void setPointsPerPerson(HashMap<Integer, Integer> depthPointsPerPerson) {
+		
+		this.pointsPerPerson = depthPointsPerPerson;
+	}
+
+	@Override
+	public void setPointsInsideBox(int points) {
+		this.depthPointsInBox = points;
+	}
+
+	@Override
+	public void setLastUpdate(Long timestamp) {
+
+		lastUpdate = timestamp;
+	}
+
+	public static void setStartCounter(int start){
+		triggerCylinderCounter = start;
+	}
+
+	/*-------------Getters--------------*/
+
+	@Override
+	public String getID() {
+		return id;
+	}
+
+	@Override
+	public float getX() {
+		return x;
+	}
+
+	@Override
+	public float getY() {
+		return y;
+	}
+
+	@Override
+	public float getZ() {
+		return z;
+	}
+
+	@Override
+	public float[] getSize() {
+		return new float[] { radius, height, cropRadius };
+	}
+
+	@Override
+	public float getVolume() {
+		return (float) Math.PI * (radius * radius - cropRadius * cropRadius) * height;
+	}
+
+	@Override
+	public int getColor() {
+		return color;
+	}
+
+	@Override
+	public int getPointsInsideBox() {
+		return depthPointsInBox;
+	}
+
+	@Override
+	public HashMap<Integer, Integer> getPointsPerPerson() {
+		return pointsPerPerson;
+	}
+
+	@Override
+	public float getRotateX() {
+
+		return rotateX;
+	}
+
+	@Override
+	public float getRotateY() {
+
+		return rotateY;
+	}
+
+	@Override
+	public float getRotateZ() {
+
+		return rotateZ;
+	}
+
+	@Override
+	public long getLastUpdate() {
+
+		return lastUpdate;
+	}
+	
+	/**
+	 * Returns the rotation matrix for the triggercylinder
+	 * @return
+	 */
+	public Mat getRotationMatrix() {
+
+		Quat buildQuat = new Quat(0, 0, 0);
+		return buildQuat.matrix();
+	}
+
+}
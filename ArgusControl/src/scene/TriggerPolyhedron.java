@@ -0,0 +1,289 @@
+package scene;
+
+import java.io.Serializable;
+import java.util.HashMap;
+
+import remixlab.dandelion.geom.Mat;
+import remixlab.dandelion.geom.Quat;
+
+/**
+ * A Triggerzone shaped like an arbitrary convex polyhedron. The vertices are
+ * given relative to the position of the zone and scaled by its size, every
+ * face is a list of vertex indices.
+ * 
+ * @author Moritz Skowronski
+ *
+ */
+public class TriggerPolyhedron extends AbstractTriggerZone implements Serializable {
+
+	private static final long serialVersionUID = -2630717385440823152L;
+
+	private static int triggerPolyhedronCounter = 0;
+
+	private String id;
+
+	// position of the zone, the vertices are relative to it
+	private float x;
+	private float y;
+	private float z;
+
+	// scale of the vertices
+	private float sizeX;
+	private float sizeY;
+	private float sizeZ;
+
+	private float rotateX;
+	private float rotateY;
+	private float rotateZ;
+
+	// x, y, z of every vertex
+	private float[] vertices;
+	// vertex indices of every face
+	private int[][] faces;
+
+	private long lastUpdate;
+
+	// color
+	private int color;
+
+	// amount of PersonPoints in the Polyhedron
+	private int depthPointsInBox;
+
+	// <PersonID, Points of that Person>
+	private HashMap<Integer, Integer> pointsPerPerson;
+
+	/**
+	 * Constructs a new TriggerPolyhedron
+	 * 
+	 * @param x
+	 *            x Position
+	 * @param y
+	 *            y Position
+	 * @param z
+	 *            z Position
+	 * @param vertices
+	 *            x, y, z of every vertex relative to the position
+	 * @param faces
+	 *            vertex indices of every face, the polyhedron has to be convex
+	 */
+	public TriggerPolyhedron(float x, float y, float z, float[] vertices, int[][] faces) {
+		this.id = "Triggerpolyhedron " + triggerPolyhedronCounter++;
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.rotateX = 0;
+		this.rotateY = 0;
+		this.rotateZ = 0;
+		this.vertices = vertices;
+		this.faces = faces;
+		sizeX = 1;
+		sizeY = 1;
+		sizeZ = 1;
+
+		pointsPerPerson = new HashMap<Integer, Integer>();
+
+		// Make random color for better visualization
+		int r = (int) (Math.random() * 256);
+		int g = (int) (Math.random() * 256);
+		int b = (int) (Math.random() * 256);
+		int a = 255;
+		a = a << 24;
+		r = r << 16;
+		g = g << 8;
+		color = (a | r | g | b);
+
+		lastUpdate = System.currentTimeMillis();
+	}
+
+	/*-------------Setters--------------*/
+
+	@Override
+	public void setID(String id) {
+		this.id = id;
+	}
+
+	@Override
+	public void setX(float x) {
+		this.x = x;
+	}
+
+	@Override
+	public void setY(float y) {
+		this.y = y;
+	}
+
+	@Override
+	public void setZ(float z) {
+		this.z = z;
+	}
+
+	@Override
+	public void setRotateX(float x) {
+
+		this.rotateX = x;
+	}
+
+	@Override
+	public void setRotateY(float y) {
+
+		this.rotateY = y;
+	}
+
+	@Override
+	public void setRotateZ(float z) {
+
+		this.rotateZ = z;
+	}
+
+	/**
+	 * Sets the scale of the vertices
+	 */
+	@Override
+	public void setSize(float x, float y, float z) {
+		this.sizeX = x;
+		this.sizeY = y;
+		this.sizeZ = z;
+	}
+
+	@Override
+	public void setColor(int col) {
+		this.color = col;
+	}
+
+	@Override
+	public void setPointsPerPerson(HashMap<Integer, Integer> depthPointsPerPerson) {
+		
+		this.pointsPerPerson = depthPointsPerPerson;
+	}
+
+	@Override
+	public void setPointsInsideBox(int points) {
+		this.depthPointsInBox = points;
+	}
+
+	@Override
+	public void setLastUpdate(Long timestamp) {
+
+		lastUpdate = timestamp;
+	}
+
+	public static void setStartCounter(int start){
+		triggerPolyhedronCounter = start;
+	}
+
+	/*-------------Getters--------------*/
+
+	@Override
+	public String getID() {
+		return id;
+	}
+
+	@Override
+	public float getX() {
+		return x;
+	}
+
+	@Override
+	public float getY() {
+		return y;
+	}
+
+	@Override
+	public float getZ() {
+		return z;
+	}
+
+	@Override
+	public float[] getSize() {
+		return new float[] { sizeX, sizeY, sizeZ };
+	}
+
+	/**
+	 * Calculates the volume with the divergence theorem over a triangle fan of
+	 * every face
+	 */
+	@Override
+	public float getVolume() {
+
+		float volume = 0;
+		for (int[] face : faces) {
+			for (int i = 1; i + 1 < face.length; i++) {
+
+				int a = face[0] * 3, b = face[i] * 3, c = face[i + 1] * 3;
+				float ax = vertices[a] * sizeX, ay = vertices[a + 1] * sizeY, az = vertices[a + 2] * sizeZ;
+				float bx = vertices[b] * sizeX, by = vertices[b + 1] * sizeY, bz = vertices[b + 2] * sizeZ;
+				float cx = vertices[c] * sizeX, cy = vertices[c + 1] * sizeY, cz = vertices[c + 2] * sizeZ;
+				volume += ax * (by * cz - bz * cy) + ay * (bz * cx - bx * cz) + az * (bx * cy - by * cx);
+			}
+		}
+		return Math.abs(volume) / 6;
+	}
+
+	@Override
+	public int getColor() {
+		return color;
+	}
+
+	@Override
+	public int getPointsInsideBox() {
+		return depthPointsInBox;
+	}
+
+	@Override
+	public HashMap<Integer, Integer> getPointsPerPerson() {
+		return pointsPerPerson;
+	}
+
+	@Override
+	public float getRotateX() {
+
+		return rotateX;
+	}
+
+	@Override
+	public float getRotateY() {
+
+		return rotateY;
+	}
+
+	@Override
+	public float getRotateZ() {
+
+		return rotateZ;
+	}
+
+	@Override
+	public long getLastUpdate() {
+
+		return lastUpdate;
+	}
+	
+	/**
+	 * Returns the vertices relative to the position
+	 * 
+	 * @return x, y, z of every vertex
+	 */
+	public float[] getVertices() {
+		return vertices;
+	}
+
+	/**
+	 * Returns the faces
+	 * 
+	 * @return vertex indices of every face
+	 */
+	public int[][] getFaces() {
+		return faces;
+	}
+
+	/**
+	 * Returns the rotation matrix for the triggerpolyhedron
+	 * @return
+	 */
+	public Mat getRotationMatrix() {
+
+		Quat buildQuat = new Quat(0, 0, 0);
+		return buildQuat.matrix();
+	}
+
+}
@@ -1,6 +1,10 @@
 package visualization;
 
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import communication.DepthCodec;
 
 /**
  * Interface for parsing the UDP Images to the Display
@@ -11,12 +15,15 @@ import java.awt.image.BufferedImage;
 public interface ImageUpdateListener {
 
 	/**
-	 * Is called when the UDP Server has received a point cloud
+	 * Is called when the UDP Server has received a point cloud. The buffer is
+	 * reused after the call, so it has to be decoded right away
 	 * 
-	 * @param pointCloudData
-	 *            the encoded point cloud data
+	 * @param encodedDepth
+	 *            the depth values encoded by the {@link DepthCodec}
+	 * @throws IOException
+	 *             if the point cloud can't be decoded
 	 */
-	public void updatePointCloud(BufferedImage pointCloudData);
+	public void updatePointCloud(ByteBuffer encodedDepth) throws IOException;
 
 	/**
 	 * Is called when the UDP Server has received an image
@@ -1,6 +1,11 @@
 package visualization;
 
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+
+import communication.DepthCodec;
 
 import processing.core.PApplet;
 import processing.core.PImage;
@@ -19,36 +24,56 @@ public class KinectImage implements ImageUpdateListener {
 
 	private static final int CAMERAWIDTH = 512;
 	private static final int CAMERAHEIGHT = 424;
-	
+
+	// only every 4th pixel in both directions is streamed for the point cloud
+	private static final int POINTCLOUDSTEP = 4;
 
 	private PImage image;
-	private PImage pointCloudImage;
+
+	// The depth arrays are handed between the receiving thread and the
+	// Display, every array is owned by only one of them at a time
+
+	// decoded point cloud the Display hasn't taken yet
+	private AtomicReference<int[]> decodedData;
+	// array the Display doesn't draw anymore, reused for decoding
+	private AtomicReference<int[]> freeData;
+	// point cloud drawn by the Display
 	private int[] depthData;
+	// array the receiving thread decodes into
+	private int[] decodeBuffer;
 
-	private boolean available;
+	private volatile boolean available;
 
 	public KinectImage(PApplet p) {
 
 		image = p.createImage(CAMERAWIDTH, CAMERAHEIGHT, PApplet.RGB);
-		pointCloudImage = p.createImage(CAMERAWIDTH / 4, CAMERAHEIGHT / 4, PApplet.RGB);
-		depthData = new int[pointCloudImage.pixels.length];
+		depthData = new int[(CAMERAWIDTH / POINTCLOUDSTEP) * (CAMERAHEIGHT / POINTCLOUDSTEP)];
+		decodedData = new AtomicReference<int[]>();
+		freeData = new AtomicReference<int[]>();
 	}
 
 	/**
-	 * Receives the encoded Image of the UDP Stream and decodes it to point
-	 * cloud data, transferring the data to Real World Values.
+	 * Decodes the depth values of the point cloud in a single pass into a
+	 * buffer of its own. The point cloud is only handed to the Display if it
+	 * was decoded completely, so a damaged image never shows up half decoded
 	 * 
-	 * @param encodedImage
-	 *            the encoded depth values
+	 * @param encodedDepth
+	 *            the depth values encoded by the {@link DepthCodec}
+	 * @throws IOException
+	 *             if the point cloud can't be decoded
 	 */
-	public void updatePointCloud(BufferedImage encodedImage) {
-		pointCloudImage.loadPixels();
-		encodedImage.getRGB(0, 0, pointCloudImage.width, pointCloudImage.height, pointCloudImage.pixels, 0,
-				pointCloudImage.width);
-		pointCloudImage.updatePixels();
-		for (int i = 0; i < depthData.length; i++) {
-			depthData[i] = decodeRGBIntoDepth(pointCloudImage.pixels[i]);
-		}
+	public void updatePointCloud(ByteBuffer encodedDepth) throws IOException {
+
+		if (decodeBuffer == null)
+			decodeBuffer = freeData.getAndSet(null);
+		if (decodeBuffer == null)
+			decodeBuffer = new int[depthData.length];
+
+		DepthCodec.decode(encodedDepth, decodeBuffer);
+
+		// A point cloud the Display hasn't taken yet is replaced and decoded
+		// into next time
+		decodeBuffer = decodedData.getAndSet(decodeBuffer);
 		available = true;
 	}
 
@@ -66,17 +91,6 @@ public class KinectImage implements ImageUpdateListener {
 		available = true;
 	}
 
-	/**
-	 * Returns the Point Cloud if the point cloud is from the correct Kinect,
-	 * otherwise returns null
-	 * 
-	 * @return
-	 */
-	public PImage getPointCloudImage() {
-		available = false;
-		return pointCloudImage;
-	}
-
 	/**
 	 * Returns the imageif the image is from the correct Kinect, otherwise
 	 * returns null
@@ -88,84 +102,20 @@ public class KinectImage implements ImageUpdateListener {
 		return image;
 	}
 	
-	public int[] returnDepthData(){
-		return depthData;
-	}
-
 	/**
-	 * Decodes an RGB Value into Real World Depth Value
+	 * Returns the latest completely decoded point cloud. Must only be called
+	 * by the Display, the returned array stays unchanged until the next call
 	 * 
-	 * @param rgb
-	 *            an encoded rgb Value
-	 * @return decoded depth value
+	 * @return
 	 */
-	private int decodeRGBIntoDepth(int rgb) {
-
-		// TODO Check if Shift is working
-		float r = (rgb >> 16) & 0xFF;
-		float g = (rgb >> 8) & 0xFF;
-		float b = rgb & 0xFF;
-		int depth = 0;
-		if (r == 255) {
-			depth += 7000;
-		}
-		if (r == 223) {
-			depth += 6000;
-		}
-		if (r == 191) {
-			depth += 5000;
-		}
-		if (r == 159) {
-			depth += 4000;
-		}
-		if (r == 127) {
-			depth += 3000;
-		}
-		if (r == 95) {
-			depth += 2000;
-		}
-		if (r == 63) {
-			depth += 1000;
-		}
-		if (r == 31) {
-			depth += 0;
-		}
-		if (r == 0) {
-			return 0;
-		}
-		if (g == 225) {
-			depth += 900;
-		}
-		if (g == 200) {
-			depth += 800;
-		}
-		if (g == 175) {
-			depth += 700;
-		}
-		if (g == 150) {
-			depth += 600;
-		}
-		if (g == 125) {
-			depth += 500;
-		}
-		if (g == 100) {
-			depth += 400;
-		}
-		if (g == 75) {
-			depth += 300;
-		}
-		if (g == 50) {
-			depth += 200;
-		}
-		if (g == 25) {
-			depth += 100;
-		}
-		if (g == 0) {
-			depth += 0;
-		}
-		depth += b;
+	public int[] returnDepthData() {
 
-		return depth;
+		int[] decoded = decodedData.getAndSet(null);
+		if (decoded != null) {
+			freeData.set(depthData);
+			depthData = decoded;
+		}
+		return depthData;
 	}
 
 	/**
@@ -26,9 +26,13 @@ import scene.AbstractTriggerZone;
 public class OSCClient implements UpdateListener {
 
 	// By default, send to localhost
-	private static NetAddress netAdress = new NetAddress("127.0.0.1", 3333);
+	private static volatile NetAddress netAdress = new NetAddress("127.0.0.1", 3333);
 	private static boolean running;
 
+	// If set, messages are only queued and sent by flushQueue(), so they
+	// can be sent by another thread than the one creating them
+	private static OSCQueue queue;
+
 	public static void startClient(String ip, int sendPort) {
 		netAdress = new NetAddress(ip, sendPort);
 		running = true;
@@ -88,7 +92,7 @@ public class OSCClient implements UpdateListener {
 			message.add(tempVector.z);
 		}
 
-		sendMessage(message);
+		sendMessage(message, false);
 	}
 
 	/**
@@ -100,7 +104,7 @@ public class OSCClient implements UpdateListener {
 		OscMessage message = new OscMessage("personLeft");
 		message.add(id);
 
-		sendMessage(message);
+		sendMessage(message, false);
 	}
 
 	/**
@@ -155,21 +159,52 @@ public class OSCClient implements UpdateListener {
 			message.add(tempVector.z);
 		}
 
-		sendMessage(message);
+		sendMessage(message, true);
 	}
 
 	/**
 	 * Add Timestamp. Then flush message to Server
 	 * 
 	 * @param message
+	 * @param droppable
+	 *            true for per-frame updates, which may be dropped if the
+	 *            queue is full
 	 */
-	private static void sendMessage(OscMessage message) {
+	private static void sendMessage(OscMessage message, boolean droppable) {
 
 		// Send Timestamp as String, because we can't send long
 		message.add("fseq");
 		message.add(String.valueOf(System.currentTimeMillis()));
 
-		OscP5.flush(message, netAdress);
+		if (queue != null)
+			queue.offer(message, droppable);
+		else
+			OscP5.flush(message, netAdress);
+	}
+
+	/**
+	 * Sets the queue messages are collected in instead of sending them
+	 * directly
+	 * 
+	 * @param messageQueue
+	 *            null to send directly
+	 */
+	public static void setQueue(OSCQueue messageQueue) {
+		queue = messageQueue;
+	}
+
+	/**
+	 * Sends all queued messages
+	 */
+	public static void flushQueue() {
+
+		if (queue == null)
+			return;
+
+		OscMessage message;
+		while ((message = queue.poll()) != null) {
+			OscP5.flush(message, netAdress);
+		}
 	}
 
 	/**
@@ -197,7 +232,7 @@ public class OSCClient implements UpdateListener {
 			message.add(pair.getValue());
 		}
 
-		sendMessage(message);
+		sendMessage(message, true);
 	}
 
 	public void updateTriggerzones(AbstractTriggerZone[] zones) {
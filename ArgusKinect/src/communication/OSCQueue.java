@@ -0,0 +1,100 @@
+package communication;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+import oscP5.OscMessage;
+
+/**
+ * Queue for the OSC messages between the tracking and the output stage. If the
+ * output falls behind, only the oldest per-frame updates are dropped. Persons
+ * entering or leaving are always kept, so the receiver never misses a person.
+ *
+ * @author Moritz Skowronski
+ *
+ */
+public class OSCQueue {
+
+	private ArrayDeque<Entry> entries;
+
+	// maximum number of droppable messages in the queue
+	private int capacity;
+	private int droppableCount;
+
+	// number of messages that were dropped because the queue was full
+	private long dropped;
+
+	public OSCQueue(int capacity) {
+
+		this.capacity = Math.max(1, capacity);
+		entries = new ArrayDeque<Entry>();
+	}
+
+	/**
+	 * Adds a message. If the queue already holds the maximum number of
+	 * droppable messages, the oldest droppable one is removed
+	 *
+	 * @param message
+	 * @param droppable
+	 *            true for updates that are sent every frame anyway
+	 */
+	public synchronized void offer(OscMessage message, boolean droppable) {
+
+		if (droppable) {
+			if (droppableCount == capacity) {
+				removeOldestDroppable();
+				dropped++;
+			}
+			droppableCount++;
+		}
+		entries.add(new Entry(message, droppable));
+	}
+
+	/**
+	 * Removes the oldest message without waiting
+	 *
+	 * @return the message or null, if the queue is empty
+	 */
+	public synchronized OscMessage poll() {
+
+		Entry entry = entries.poll();
+		if (entry == null)
+			return null;
+		if (entry.droppable)
+			droppableCount--;
+		return entry.message;
+	}
+
+	/**
+	 * Returns the number of messages that were dropped because the queue was
+	 * full
+	 *
+	 * @return
+	 */
+	public synchronized long getDropped() {
+		return dropped;
+	}
+
+	private void removeOldestDroppable() {
+
+		Iterator<Entry> iterator = entries.iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().droppable) {
+				iterator.remove();
+				droppableCount--;
+				return;
+			}
+		}
+	}
+
+	private static class Entry {
+
+		private OscMessage message;
+		private boolean droppable;
+
+		Entry(OscMessage message, boolean droppable) {
+			this.message = message;
+			this.droppable = droppable;
+		}
+	}
+}
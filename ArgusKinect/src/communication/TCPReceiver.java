@@ -17,7 +17,7 @@ public class TCPReceiver implements Runnable {
 
 	private Socket socket;
 	private ObjectInputStream inputStream;
-	private boolean listening;
+	private volatile boolean listening;
 	private boolean available;
 	private boolean connectionLost;
 	private int counter;
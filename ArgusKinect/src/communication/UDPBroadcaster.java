@@ -102,15 +102,17 @@ public class UDPBroadcaster implements Runnable {
 							+ receivePacket.getAddress().getHostAddress());
 
 					// Check if the message is correct
-					String message = new String(receivePacket.getData()).trim();
+					String message = new String(receivePacket.getData(), 0, receivePacket.getLength()).trim();
 					if (message.startsWith(anticipatedResponse)) {
 						serverIP = receivePacket.getAddress().getHostAddress();
 						// Using length is ok, because of the / after the
-						// response and before the port
-						String port = message.substring(anticipatedResponse.length());
+						// response and before the ports. The response holds
+						// the OSC Port and the port of the image stream
+						String[] ports = message.substring(anticipatedResponse.length()).split("/");
 						tcpPort = receivePacket.getPort();
-						udpPort = tcpPort;
-						oscPort = Integer.parseInt(port);
+						oscPort = Integer.parseInt(ports[0]);
+						// Older servers receive the images on the TCP Port
+						udpPort = ports.length > 1 ? Integer.parseInt(ports[1]) : tcpPort;
 						portSet = true;
 					}
 					running = false;
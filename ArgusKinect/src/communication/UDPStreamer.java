@@ -3,14 +3,16 @@ package communication;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
 
 import javax.imageio.ImageIO;
 
-import helpers.Enum.Streams;
 import processing.core.PImage;
 
 /**
- * Streams UDP Images and Point Cloud Data to the Server
+ * Streams UDP Images and Point Cloud Data to the Server. Every image is split
+ * into chunks as described in {@link ImageChunk}, so images bigger than a
+ * single datagram can be sent
  * 
  * @author Moritz Skowronski
  *
@@ -19,12 +21,28 @@ public class UDPStreamer {
 
 	private DatagramSocket socket;
 	private String serverIP;
+	private InetAddress serverAddress;
 	private int port;
-	private boolean running;
+	private volatile boolean running;
+
+	// identifies the Kinect on the server
+	private int kinectId;
+	// number of the streamed image, increased with every image
+	private int frameSequence;
+
+	// reused for all chunks
+	private byte[] chunkBuffer;
+	// reused for all encoded depth images
+	private byte[] depthBuffer;
+	private DatagramPacket chunkPacket;
 
 	public UDPStreamer() throws SocketException {
 		socket = new DatagramSocket();
-		socket.setSendBufferSize(65536);
+		// a whole image is sent at once
+		socket.setSendBufferSize(1 << 20);
+
+		chunkBuffer = new byte[ImageChunk.HEADER_SIZE + ImageChunk.MAX_PAYLOAD];
+		chunkPacket = new DatagramPacket(chunkBuffer, chunkBuffer.length);
 	}
 
 	/**
@@ -32,20 +50,29 @@ public class UDPStreamer {
 	 * 
 	 * @param serverIP
 	 * @param port
+	 * @param kinectName
+	 *            identifies the images of this Kinect
 	 */
-	public void startStreamer(String serverIP, int port) {
+	public void startStreamer(String serverIP, int port, String kinectName) {
 		this.serverIP = serverIP;
 		this.port = port;
+		kinectId = kinectName != null ? kinectName.hashCode() : 0;
+		try {
+			serverAddress = InetAddress.getByName(serverIP);
+		} catch (UnknownHostException e) {
+			System.err.println("Unknown Server " + serverIP);
+			e.printStackTrace();
+			return;
+		}
 		running = true;
 	}
 
 	/**
-	 * Sends the image as compressed JPG to the Server or the Pointcloud as
-	 * altered, uncompressed PNG
+	 * Sends the image as compressed JPG to the Server
 	 * 
 	 * @param image
 	 */
-	public void stream(PImage image, Streams mode) {
+	public void stream(PImage image) {
 		
 		// We need a buffered image to do the JPG encoding
 		BufferedImage bimg = new BufferedImage(image.width, image.height, BufferedImage.TYPE_INT_RGB);
@@ -54,34 +81,84 @@ public class UDPStreamer {
 		image.loadPixels();
 		bimg.setRGB(0, 0, image.width, image.height, image.pixels, 0, image.width);
 
-		// Need these output streams to get image as bytes for UDP communication
+		// Need this output stream to get image as bytes for UDP communication
 		ByteArrayOutputStream baStream = new ByteArrayOutputStream();
-		BufferedOutputStream bos = new BufferedOutputStream(baStream);
-		DataOutputStream dataOutputStream = new DataOutputStream(baStream);
 
-		// Turn the BufferedImage into a JPG or Point Cloud into PNG
+		// Turn the BufferedImage into a JPG
 		try {
-			if (mode != Streams.POINTCLOUD) {
-				dataOutputStream.writeInt(0);
-				ImageIO.write(bimg, "jpg", bos);
-			} else {
-				dataOutputStream.writeInt(1);
-				ImageIO.write(bimg, "PNG", bos);
-			}
+			ImageIO.write(bimg, "jpg", baStream);
 		} catch (IOException e) {
 			System.out.println("Error compressing to jpg");
 			e.printStackTrace();
+			return;
 		}
 
-		// Transform to byteArrays
-		byte[] packet = baStream.toByteArray();
+		byte[] data = baStream.toByteArray();
+		sendChunks(ImageChunk.TYPE_IMAGE, data, data.length);
+	}
+
+	/**
+	 * Sends the depth of the point cloud losslessly compressed by the
+	 * {@link DepthCodec}
+	 * 
+	 * @param depth
+	 *            between 0 - 8000, width * height values
+	 * @param width
+	 * @param height
+	 */
+	public void streamDepth(short[] depth, int width, int height) {
+
+		int maxLength = DepthCodec.maxEncodedLength(width, height);
+		if (depthBuffer == null || depthBuffer.length < maxLength)
+			depthBuffer = new byte[maxLength];
+
+		int length = DepthCodec.encode(depth, width, height, depthBuffer);
+		sendChunks(ImageChunk.TYPE_DEPTH, depthBuffer, length);
+	}
+
+	/**
+	 * Splits the data into chunks and sends them to the Server
+	 * 
+	 * @param type
+	 *            type of the data, see {@link ImageChunk}
+	 * @param data
+	 * @param dataLength
+	 *            number of bytes of data to send
+	 */
+	private void sendChunks(int type, byte[] data, int dataLength) {
+
+		int chunkCount = Math.max(1, (dataLength + ImageChunk.MAX_PAYLOAD - 1) / ImageChunk.MAX_PAYLOAD);
+		if (chunkCount > ImageChunk.MAX_CHUNKS) {
+			System.err.println("Image too big for streaming, " + dataLength + " bytes");
+			return;
+		}
+
+		int sequence = frameSequence++;
+		ByteBuffer header = ByteBuffer.wrap(chunkBuffer);
 
-		// Send JPEG data as a datagram
 		try {
-			socket.send(new DatagramPacket(packet, packet.length, InetAddress.getByName(serverIP), port));
+			for (int chunk = 0; chunk < chunkCount; chunk++) {
+
+				int offset = chunk * ImageChunk.MAX_PAYLOAD;
+				int length = Math.min(ImageChunk.MAX_PAYLOAD, dataLength - offset);
+
+				header.clear();
+				header.putInt(ImageChunk.MAGIC);
+				header.putInt(type);
+				header.putInt(kinectId);
+				header.putInt(sequence);
+				header.putShort((short) chunk);
+				header.putShort((short) chunkCount);
+				System.arraycopy(data, offset, chunkBuffer, ImageChunk.HEADER_SIZE, length);
+
+				chunkPacket.setData(chunkBuffer, 0, ImageChunk.HEADER_SIZE + length);
+				chunkPacket.setAddress(serverAddress);
+				chunkPacket.setPort(port);
+				socket.send(chunkPacket);
+			}
 		} catch (Exception e) {
 			System.err.println("Sending image failed");
-			System.err.println("Packetsize " + packet.length);
+			System.err.println("Imagesize " + dataLength);
 			e.printStackTrace();
 		}
 	}
@@ -1,30 +1,44 @@
 package control;
 
 import processing.core.PApplet;
+import processing.core.PImage;
 import scene.PersonHandler;
 import helpers.OSChooser;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import communication.OSCClient;
+import communication.OSCQueue;
 import communication.TCPReceiver;
 import communication.UDPBroadcaster;
 import communication.UDPStreamer;
 import helpers.Enum.OS;
-import helpers.Enum.Streams;
 import imageProcessing.ImageProcessor2D;
 import imageProcessing.PointCloudCreation;
 import kinect.*;
 
 /**
  * This class exposes all control settings and manages the general functionality
- * of the application during runtime.
+ * of the application during runtime. The depth frames are processed by a
+ * {@link FramePipeline}, this class does the work of its stages. The
+ * connection to the server is kept alive by its own thread, so nothing depends
+ * on the frame rate of the UI and the application can run without a window.
  * 
  * @author Moritz Skowronski
  */
-public class Control {
+public class Control implements FrameProcessor {
+
+	// Number of per-frame OSC updates waiting for the output stage
+	private static final int OSC_QUEUE_CAPACITY = 4096;
+
+	// Time between two checks of the connection and the settings
+	private static final long EXECUTE_INTERVAL = 33;
 
 	private PApplet p;
 
@@ -40,7 +54,16 @@ public class Control {
 
 	private TCPReceiver tcpReceiver;
 
-	private Settings settings;
+	// replaced as a whole when new settings arrive, every stage applies them
+	// on its own thread
+	private volatile Settings settings;
+	private Settings segmentationSettings;
+	private Settings trackingSettings;
+
+	private FramePipeline pipeline;
+
+	// runs execute() and the requests of the UI one after another
+	private ScheduledExecutorService executor;
 
 	private OSCClient oscClient;
 
@@ -49,6 +72,20 @@ public class Control {
 
 	private PointCloudCreation pointCloudCreator;
 
+	// Name of the Kinect, used to store the background model
+	private volatile String kinectName;
+	// Name the loaded background model belongs to
+	private String backgroundModelName;
+
+	// Filled with the streamed image, only used by the output stage
+	private PImage outputImage;
+
+	// sequence of the last captured depth frame
+	private long lastDepthSequence = -1;
+
+	// true while the depth calibration is running
+	private boolean calibrating;
+
 	public Control(PApplet p) {
 
 		this.p = p;
@@ -69,27 +106,220 @@ public class Control {
 		}
 		tcpReceiver = new TCPReceiver();
 		settings = new Settings();
-		pointCloudCreator = new PointCloudCreation(this.p);
+		segmentationSettings = settings;
+		trackingSettings = settings;
+		pointCloudCreator = new PointCloudCreation();
+		outputImage = this.p.createImage(AbstractKinect.DEPTH_WIDTH, AbstractKinect.DEPTH_HEIGHT, PApplet.RGB);
+
+		// OSC messages are created by the tracking and sent by the output
+		// stage
+		OSCClient.setQueue(new OSCQueue(OSC_QUEUE_CAPACITY));
+		pipeline = new FramePipeline(this, AbstractKinect.DEPTH_WIDTH, AbstractKinect.DEPTH_HEIGHT);
+		executor = Executors.newSingleThreadScheduledExecutor();
+	}
+
+	/**
+	 * Starts processing the frames and checking the connection, independent
+	 * of any UI
+	 */
+	public void start() {
+
+		pipeline.start();
+		executor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					execute();
+				} catch (Exception e) {
+					// an exception would cancel all further executions
+					System.err.println("Error executing control loop");
+					e.printStackTrace();
+				}
+			}
+		}, 0, EXECUTE_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops all processing
+	 */
+	public void stop() {
+
+		executor.shutdownNow();
+		pipeline.stop();
 	}
 
-	/*--------------Kinect Control--------------*/
+	/*--------------Frame Pipeline--------------*/
 
-	/*
-	 * Updates all Kinect Streams
+	/**
+	 * Updates all Kinect Streams and hands the latest depth frame to the frame
 	 */
-	private void updateKinect() {
+	@Override
+	public boolean capture(Frame frame) {
+
+		if (kinect == null)
+			return false;
 
 		kinect.updateDepthImage();
 		kinect.updateIRImage();
+
+		DepthFrame depthFrame = kinect.acquireDepthFrame();
+		if (depthFrame == null)
+			return false;
+
+		// The Kinect is polled faster than it delivers new images, the same
+		// depth frame doesn't need to be processed twice
+		if (depthFrame.getSequence() == lastDepthSequence) {
+			depthFrame.release();
+			return false;
+		}
+		lastDepthSequence = depthFrame.getSequence();
+
+		frame.capture(depthFrame);
+
+		// The Kinect updates its images in place, so the streamed preview is
+		// copied now instead of being read by the output stage
+		switch (settings.getStreamMode()) {
+		case DEPTH:
+			frame.capturePreview(kinect.getDepthImage());
+			break;
+		case INFRARED:
+			frame.capturePreview(kinect.getIRImage());
+			break;
+		default:
+			break;
+		}
+		return true;
+	}
+
+	/**
+	 * Calibrates the background model or extracts the contours of the persons
+	 * from the frame
+	 */
+	@Override
+	public void segment(Frame frame) {
+
+		Settings current = settings;
+		if (current != segmentationSettings) {
+			imageProcessor.setBlobSize(current.getMinimumContourSize());
+			imageProcessor.setDifferenceThreshold(current.getThreshold());
+			// Settings of an older server don't have the background parameters
+			if (current.getDeviationFactor() > 0)
+				imageProcessor.setDeviationFactor(current.getDeviationFactor());
+			imageProcessor.setLearningRate(current.getLearningRate());
+			segmentationSettings = current;
+		}
+
+		String name = kinectName;
+		if (name != null && !name.equals(backgroundModelName)) {
+			backgroundModelName = name;
+			loadBackgroundModel();
+		}
+
+		if (current.isRunCalibration()) {
+
+			// A new calibration starts from an empty model, the scene may have
+			// changed since the last one
+			if (!calibrating)
+				imageProcessor.resetBackgroundModel();
+			imageProcessor.calibrate(frame.getDepthData());
+			calibrating = true;
+		} else if (calibrating) {
+
+			// Calibration has finished, keep the result for the next start
+			calibrating = false;
+			saveBackgroundModel();
+		}
+		if (current.isRunMultiKinectCalibration()) {
+			// TODO Additional functionality to combine multiple kinects
+			// together
+		}
+
+		// analyzes the image, extracts contour from image
+		imageProcessor.process(frame.getDepthData(), frame.getComponents(), frame.getContours());
+		System.arraycopy(imageProcessor.getDifferenceMask(), 0, frame.getDifferenceMask(), 0,
+				frame.getDifferenceMask().length);
+	}
+
+	/**
+	 * Tracks the persons of the frame and checks the triggerzones
+	 */
+	@Override
+	public void track(Frame frame) {
+
+		Settings current = settings;
+		if (current != trackingSettings) {
+			personHandler.setTriggerZones(current.getTriggerZones());
+			personHandler.setSamplingStride(current.getSamplingStride());
+			personHandler.setAdaptiveSampling(current.isAdaptiveSampling());
+			// Settings of an older server don't have the tracking parameters
+			if (current.getAssignmentMode() != null)
+				personHandler.setAssignmentMode(current.getAssignmentMode());
+			if (current.getIdRadius() > 0)
+				personHandler.setIdRadius(current.getIdRadius());
+			// 0 from an older server deletes undetected persons at once, as
+			// before
+			personHandler.setMaxLostFrames(current.getMaxLostFrames());
+
+			// Calculate Edges & Vertices for all the Triggerzones
+			personHandler.initializeTriggerZones();
+			trackingSettings = current;
+		}
+
+		if (current.isTracking()) {
+
+			// performs the tracking
+			personHandler.analyzeContour(frame.getContours(), frame.getComponents(), frame.getDepthData());
+		}
+	}
+
+	/**
+	 * Sends the OSC messages of the tracking and streams the requested image
+	 */
+	@Override
+	public void output(Frame frame) {
+
+		OSCClient.flushQueue();
+
+		// Switches Stream modes
+		if (udpStream.isRunning()) {
+			switch (settings.getStreamMode()) {
+			case DEPTH:
+			case INFRARED:
+				// the stream mode may have changed since the capture
+				if (frame.hasPreview()) {
+					int[] preview = frame.getPreviewPixels();
+					outputImage.loadPixels();
+					System.arraycopy(preview, 0, outputImage.pixels, 0, preview.length);
+					outputImage.updatePixels();
+					udpStream.stream(outputImage);
+				}
+				break;
+			case MASK:
+				byte[] mask = frame.getDifferenceMask();
+				outputImage.loadPixels();
+				for (int i = 0; i < mask.length; i++) {
+					outputImage.pixels[i] = mask[i] != 0 ? 0xFFFFFFFF : 0xFF000000;
+				}
+				outputImage.updatePixels();
+				udpStream.stream(outputImage);
+				break;
+			case POINTCLOUD:
+				udpStream.streamDepth(pointCloudCreator.rawDepthToPointCloud(frame.getDepthData()),
+						pointCloudCreator.getWidth(), pointCloudCreator.getHeight());
+				break;
+			default:
+				break;
+			}
+		}
 	}
 
 	/**
-	 * Executes all steps for image processing and communication based on
-	 * Settings class
+	 * Keeps the connection to the server alive and takes over new settings.
+	 * The frames are processed by the pipeline. Runs on the thread of the
+	 * executor
 	 */
-	public void execute() {
+	private void execute() {
 
-		updateKinect();
 		// if udpBroadcaster has found a server, use the information gained from
 		// it to start all the information streams
 		if (!tcpReceiver.lostConnection()) {
@@ -102,7 +332,7 @@ public class Control {
 				}
 				if (!udpStream.isRunning()) {
 
-					udpStream.startStreamer(ip, udpBroadcaster.getUDPPort());
+					udpStream.startStreamer(ip, udpBroadcaster.getUDPPort(), kinectName);
 				}
 				if (!tcpReceiver.isListening()) {
 
@@ -136,56 +366,10 @@ public class Control {
 			broadcastThread.start();
 		}
 		// Main logic, set all processing details via Settings class
-		// Only execute these when new settings arrive
+		// The stages apply new settings before their next frame
 		if (tcpReceiver.isListening() && tcpReceiver.hasNewSettings()) {
 			settings = tcpReceiver.getSettings();
-			imageProcessor.setBlobSize(settings.getMinimumContourSize());
-			imageProcessor.setDifferenceThreshold(settings.getThreshold());
-			personHandler.setTriggerZones(settings.getTriggerZones());
-
-			// Calculate Edges & Vertices for all the Triggerzones
-			personHandler.initializeTriggerZones();
-		}
-
-		// Execute these on every iteration
-		if (settings.isRunCalibration()) {
-			
-			imageProcessor.calibrate(kinect.getRawDepthData());
-		}
-		if (settings.isRunMultiKinectCalibration()) {
-			// TODO Additional functionality to combine multiple kinects
-			// together
-		}
-
-		// Switches Stream modes
-		if (udpStream.isRunning()) {
-			switch (settings.getStreamMode()) {
-			case DEPTH:
-				udpStream.stream(kinect.getDepthImage(), Streams.DEPTH);
-				break;
-			case INFRARED:
-				udpStream.stream(kinect.getIRImage(), Streams.INFRARED);
-				break;
-			case MASK:
-				udpStream.stream(imageProcessor.getDifferencedImage(), Streams.PERSON);
-				break;
-			case POINTCLOUD:
-				udpStream.stream(pointCloudCreator.rawDepthToPointCloud(kinect.getRawDepthData()), Streams.POINTCLOUD);
-				break;
-			default:
-				break;
-			}
-		}
-		
-		// analyzes the image, extracts contour from image
-		imageProcessor.process(kinect.getRawDepthData());
-
-		if (settings.isTracking()) {
-
-			// performs the tracking
-			personHandler.analyzeContour(imageProcessor.getContours(), kinect.getRawDepthData());
 		}
-
 	}
 
 	/**
@@ -216,10 +400,64 @@ public class Control {
 	 * @param name
 	 * @param port
 	 */
-	public void setBroadcast(String name, int port) {
+	public void setBroadcast(final String name, final int port) {
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				udpBroadcaster.setClientName(name);
+				udpBroadcaster.setBroadcastPort(port);
+
+				// the segmentation loads the background model of the new name
+				kinectName = name;
+			}
+		});
+	}
+
+	/*------------Background Model--------------*/
+
+	/**
+	 * Returns the file the background model of this Kinect is stored in
+	 * 
+	 * @return
+	 */
+	private File getBackgroundModelFile() {
 
-		udpBroadcaster.setClientName(name);
-		udpBroadcaster.setBroadcastPort(port);
+		return new File("./data/" + backgroundModelName + ".background");
+	}
+
+	/**
+	 * Saves the background model of this Kinect. Only called by the
+	 * segmentation
+	 */
+	private void saveBackgroundModel() {
+
+		if (backgroundModelName == null)
+			return;
+		try {
+			imageProcessor.saveBackgroundModel(getBackgroundModelFile());
+		} catch (IOException e) {
+			System.err.println("Couldn't save background model for Kinect " + backgroundModelName);
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Loads the background model of this Kinect, if there is one. Only called
+	 * by the segmentation
+	 */
+	private void loadBackgroundModel() {
+
+		File file = getBackgroundModelFile();
+		if (!file.exists())
+			return;
+		try {
+			if (imageProcessor.loadBackgroundModel(file))
+				System.out.println("Loaded background model for Kinect " + backgroundModelName);
+		} catch (IOException e) {
+			System.err.println("Couldn't load background model for Kinect " + backgroundModelName);
+			e.printStackTrace();
+		}
 	}
 
 	/**
@@ -228,20 +466,56 @@ public class Control {
 	 * 
 	 * @param broadcast
 	 */
-	public void broadCast(boolean broadcast) {
+	public void broadCast(final boolean broadcast) {
+
+		// Runs on the executor, so it doesn't interfere with a restart of the
+		// connection in execute()
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (broadcast) {
+
+					udpBroadcaster.setRunning(true);
+					broadcastThread = new Thread(udpBroadcaster);
+					broadcastThread.setDaemon(true);
+					broadcastThread.start();
+					System.out.println("started");
+				}
+				if (!broadcast) {
+					udpBroadcaster.setRunning(false);
+					broadcastThread.interrupt();
+				}
+			}
+		});
+	}
+
+	/*-----------------Status-------------------*/
+
+	/**
+	 * Returns whether the Kinect is connected to a server
+	 * 
+	 * @return
+	 */
+	public boolean isConnected() {
+		return tcpReceiver.isListening();
+	}
 
-		if (broadcast) {
+	/**
+	 * Returns the number of frames per second that went through the pipeline
+	 * 
+	 * @return
+	 */
+	public float getFrameRate() {
+		return pipeline.getFrameRate();
+	}
 
-			udpBroadcaster.setRunning(true);
-			broadcastThread = new Thread(udpBroadcaster);
-			broadcastThread.setDaemon(true);
-			broadcastThread.start();
-			System.out.println("started");
-		}
-		if (!broadcast) {
-			udpBroadcaster.setRunning(false);
-			broadcastThread.interrupt();
-		}
+	/**
+	 * Returns the number of frames dropped because a stage fell behind
+	 * 
+	 * @return
+	 */
+	public long getDroppedFrames() {
+		return pipeline.getDroppedFrames();
 	}
 
 }
@@ -6,7 +6,8 @@ import processing.core.PFont;
 import controlP5.*;
 
 /**
- * This class hosts the Main Windows of the Client Application
+ * This class hosts the Main Windows of the Client Application. It only shows
+ * the state of the {@link Control}, which runs on its own threads
  * 
  * @author Moritz Skowronski
  *
@@ -70,6 +71,10 @@ public class Display extends PApplet {
 
 		// try to load configuration on startup
 		guiControl.loadProperties("./data/settings");
+
+		// The window only shows the state, no need to redraw it often
+		frameRate(10);
+		control.start();
 	}
 
 	@Override
@@ -80,10 +85,16 @@ public class Display extends PApplet {
 		textFont(headerFont);
 		// Headline
 		text("KINECT", 20, 60);
-		// Run logic
-		control.execute();
-//		textFont(textAreaFont);
-//		text(frameRate, 40, height - 20);
+		// State of the processing, which runs independently of the window
+		textFont(textAreaFont);
+		text(control.isConnected() ? "Connected" : "Not connected", 50, 230);
+		text(nf(control.getFrameRate(), 0, 1) + " fps, " + control.getDroppedFrames() + " frames dropped", 50, 245);
+	}
+
+	@Override
+	public void exit() {
+		control.stop();
+		super.exit();
 	}
 
 	/**
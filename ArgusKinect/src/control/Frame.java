@@ -0,0 +1,140 @@
+package control;
+
+import java.util.ArrayList;
+
+import gab.opencv.Contour;
+import imageProcessing.ConnectedComponents;
+import kinect.DepthFrame;
+import processing.core.PImage;
+
+/**
+ * One depth frame on its way through the {@link FramePipeline}. Holds the
+ * depth frame of the Kinect and the results of the segmentation, so every
+ * stage can work on its own frame. Frames are pooled and reused, nothing is
+ * allocated per frame.
+ *
+ * @author Moritz Skowronski
+ *
+ */
+public class Frame {
+
+	// number of the frame, counted by the capture stage
+	private long sequence;
+	private long timestamp;
+
+	// held until the frame goes back into the pool
+	private DepthFrame depthFrame;
+
+	// copy of the streamed preview image, taken at the capture, so the
+	// output doesn't read an image the Kinect is updating
+	private int[] previewPixels;
+	private boolean hasPreview;
+
+	/*------------Segmentation------------*/
+	// changed pixels are 255, the rest is 0
+	private byte[] differenceMask;
+	private ArrayList<Contour> contours;
+	private ConnectedComponents components;
+
+	public Frame(int width, int height) {
+
+		differenceMask = new byte[width * height];
+		previewPixels = new int[width * height];
+		contours = new ArrayList<Contour>();
+		components = new ConnectedComponents(width, height);
+	}
+
+	/**
+	 * Takes over an acquired depth frame and clears the results of the last
+	 * use of the frame
+	 *
+	 * @param depthFrame
+	 *            is released by {@link #release()}
+	 */
+	public void capture(DepthFrame depthFrame) {
+
+		this.depthFrame = depthFrame;
+		timestamp = depthFrame.getTimestamp();
+		contours.clear();
+		hasPreview = false;
+	}
+
+	/**
+	 * Copies a preview image of the Kinect into the frame
+	 * 
+	 * @param image
+	 *            an image of the frame size
+	 */
+	public void capturePreview(PImage image) {
+
+		image.loadPixels();
+		System.arraycopy(image.pixels, 0, previewPixels, 0, Math.min(image.pixels.length, previewPixels.length));
+		hasPreview = true;
+	}
+
+	/**
+	 * Releases the depth frame, called before the frame goes back into the
+	 * pool
+	 */
+	void release() {
+
+		if (depthFrame != null) {
+			depthFrame.release();
+			depthFrame = null;
+		}
+	}
+
+	/**
+	 * Sets the number of the frame, done by the pipeline after the capture
+	 *
+	 * @param sequence
+	 */
+	void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+
+	/*------------------Getter------------------*/
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Returns the depth data, must not be changed
+	 *
+	 * @return between 0 - 8000
+	 */
+	public short[] getDepthData() {
+		return depthFrame.getDepthData();
+	}
+
+	/**
+	 * Returns the pixels of the preview image copied at the capture, only
+	 * valid if {@link #hasPreview()}
+	 * 
+	 * @return
+	 */
+	public int[] getPreviewPixels() {
+		return previewPixels;
+	}
+
+	public boolean hasPreview() {
+		return hasPreview;
+	}
+
+	public byte[] getDifferenceMask() {
+		return differenceMask;
+	}
+
+	public ArrayList<Contour> getContours() {
+		return contours;
+	}
+
+	public ConnectedComponents getComponents() {
+		return components;
+	}
+}
@@ -0,0 +1,276 @@
+package control;
+
+import helpers.RingBuffer;
+
+/**
+ * Runs capture, segmentation, tracking and output of the depth frames on
+ * separate threads, so the frame rate is bounded by the slowest stage instead
+ * of the sum of all stages. The stages are connected by small ring buffers. If
+ * a stage falls behind, the oldest frame waiting for it is dropped, so every
+ * stage always works on the latest frame it can get.
+ *
+ * Frames are taken from a pool that is big enough for all buffers and stages,
+ * dropped and finished frames go back into the pool.
+ *
+ * @author Moritz Skowronski
+ *
+ */
+public class FramePipeline {
+
+	// Number of frames that can wait in front of a stage
+	private static final int QUEUE_CAPACITY = 2;
+
+	// Number of stages holding a frame at the same time
+	private static final int STAGES = 4;
+
+	private FrameProcessor processor;
+
+	private int width;
+	private int height;
+
+	// Time between two captures, the Kinect delivers 30 frames per second
+	private long captureInterval;
+
+	private RingBuffer<Frame> pool;
+	private RingBuffer<Frame> segmentationQueue;
+	private RingBuffer<Frame> trackingQueue;
+	private RingBuffer<Frame> outputQueue;
+
+	private Thread[] threads;
+	private volatile boolean running;
+
+	// frames counted by the capture stage
+	private long sequence;
+	// captures skipped because all frames were in use
+	private volatile long skippedCaptures;
+	// frames that went through all stages
+	private volatile long finishedFrames;
+	private long lastFinish;
+	// smoothed number of finished frames per second
+	private volatile float frameRate;
+
+	public FramePipeline(FrameProcessor processor, int width, int height) {
+
+		this.processor = processor;
+		this.width = width;
+		this.height = height;
+		captureInterval = 33;
+	}
+
+	/**
+	 * Starts the threads of all stages
+	 */
+	public void start() {
+
+		if (running)
+			return;
+
+		int frames = 3 * QUEUE_CAPACITY + STAGES;
+		pool = new RingBuffer<Frame>(frames);
+		for (int i = 0; i < frames; i++) {
+			pool.offer(new Frame(width, height));
+		}
+		segmentationQueue = new RingBuffer<Frame>(QUEUE_CAPACITY);
+		trackingQueue = new RingBuffer<Frame>(QUEUE_CAPACITY);
+		outputQueue = new RingBuffer<Frame>(QUEUE_CAPACITY);
+
+		running = true;
+		threads = new Thread[] { new Thread(new Runnable() {
+			@Override
+			public void run() {
+				runCapture();
+			}
+		}, "Capture"), new Thread(new Stage(segmentationQueue, trackingQueue) {
+			@Override
+			void process(Frame frame) {
+				processor.segment(frame);
+			}
+		}, "Segmentation"), new Thread(new Stage(trackingQueue, outputQueue) {
+			@Override
+			void process(Frame frame) {
+				processor.track(frame);
+			}
+		}, "Tracking"), new Thread(new Stage(outputQueue, null) {
+			@Override
+			void process(Frame frame) {
+				processor.output(frame);
+				finished();
+			}
+		}, "Output") };
+
+		for (Thread thread : threads) {
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Stops the threads of all stages
+	 */
+	public void stop() {
+
+		if (!running)
+			return;
+
+		running = false;
+		for (Thread thread : threads) {
+			thread.interrupt();
+		}
+	}
+
+	/**
+	 * Captures a new frame in a fixed interval and hands it to the
+	 * segmentation
+	 */
+	private void runCapture() {
+
+		while (running) {
+
+			long start = System.currentTimeMillis();
+
+			Frame frame = pool.poll();
+			if (frame == null) {
+				skippedCaptures++;
+			} else {
+				try {
+					if (processor.capture(frame)) {
+						frame.setSequence(sequence++);
+						recycle(segmentationQueue.offer(frame));
+					} else {
+						recycle(frame);
+					}
+				} catch (Exception e) {
+					System.err.println("Error capturing frame");
+					e.printStackTrace();
+					recycle(frame);
+				}
+			}
+
+			try {
+				Thread.sleep(Math.max(1, captureInterval - (System.currentTimeMillis() - start)));
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Counts a frame that went through all stages
+	 */
+	private void finished() {
+
+		long now = System.currentTimeMillis();
+		if (lastFinish > 0 && now > lastFinish)
+			frameRate = 0.9f * frameRate + 0.1f * 1000f / (now - lastFinish);
+		lastFinish = now;
+		finishedFrames++;
+	}
+
+	/**
+	 * Returns a frame to the pool
+	 *
+	 * @param frame
+	 *            may be null
+	 */
+	private void recycle(Frame frame) {
+
+		if (frame != null) {
+			frame.release();
+			pool.offer(frame);
+		}
+	}
+
+	/*------------------Setter------------------*/
+
+	/**
+	 * Sets the time between two captures
+	 *
+	 * @param captureInterval
+	 *            in milliseconds
+	 */
+	public void setCaptureInterval(long captureInterval) {
+		this.captureInterval = Math.max(1, captureInterval);
+	}
+
+	/*------------------Getter------------------*/
+
+	/**
+	 * Returns the number of frames dropped because a stage fell behind
+	 *
+	 * @return
+	 */
+	public long getDroppedFrames() {
+
+		if (pool == null)
+			return 0;
+		return skippedCaptures + segmentationQueue.getDropped() + trackingQueue.getDropped()
+				+ outputQueue.getDropped();
+	}
+
+	/**
+	 * Returns the number of frames that went through all stages
+	 *
+	 * @return
+	 */
+	public long getFinishedFrames() {
+		return finishedFrames;
+	}
+
+	/**
+	 * Returns the smoothed number of frames per second that went through all
+	 * stages
+	 *
+	 * @return
+	 */
+	public float getFrameRate() {
+		return frameRate;
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * A stage taking frames from one buffer and handing them to the next
+	 */
+	private abstract class Stage implements Runnable {
+
+		private RingBuffer<Frame> input;
+		// null for the last stage
+		private RingBuffer<Frame> output;
+
+		Stage(RingBuffer<Frame> input, RingBuffer<Frame> output) {
+			this.input = input;
+			this.output = output;
+		}
+
+		abstract void process(Frame frame);
+
+		@Override
+		public void run() {
+
+			while (running) {
+
+				Frame frame;
+				try {
+					frame = input.take();
+				} catch (InterruptedException e) {
+					return;
+				}
+
+				try {
+					process(frame);
+				} catch (Exception e) {
+					System.err.println("Error in " + Thread.currentThread().getName() + " of frame "
+							+ frame.getSequence());
+					e.printStackTrace();
+				}
+
+				if (output != null)
+					recycle(output.offer(frame));
+				else
+					recycle(frame);
+			}
+		}
+	}
+}
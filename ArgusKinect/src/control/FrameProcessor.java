@@ -0,0 +1,40 @@
+package control;
+
+/**
+ * The work of the stages of a {@link FramePipeline}. Every method is called
+ * from the thread of its stage only
+ *
+ * @author Moritz Skowronski
+ *
+ */
+public interface FrameProcessor {
+
+	/**
+	 * Fills the frame with the latest depth data of the Kinect
+	 *
+	 * @param frame
+	 * @return false, if there is no depth data yet
+	 */
+	public boolean capture(Frame frame);
+
+	/**
+	 * Finds the silhouettes of the persons in the frame
+	 *
+	 * @param frame
+	 */
+	public void segment(Frame frame);
+
+	/**
+	 * Tracks the persons found in the frame
+	 *
+	 * @param frame
+	 */
+	public void track(Frame frame);
+
+	/**
+	 * Sends the results of the frame to the server
+	 *
+	 * @param frame
+	 */
+	public void output(Frame frame);
+}
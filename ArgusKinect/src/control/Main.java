@@ -4,17 +4,44 @@ package control;
 import processing.core.PApplet;
 
 /**
- * Starts the Application
+ * Starts the Application. With the arguments --headless <Kinect Name>
+ * <Broadcast Port> it runs without a window and starts broadcasting right
+ * away.
+ * 
  * @author Moritz Skowronski
  *
  */
 public class Main {
 
-	
 	public static void main(String[] args) {
-		
+
+		if (args.length >= 3 && args[0].equals("--headless")) {
+			startHeadless(args[1], Integer.parseInt(args[2]));
+			return;
+		}
+
 		String[] startString = { "Start" };
 		Display display = new Display();
 		PApplet.runSketch(startString, display);
 	}
+
+	/**
+	 * Runs the processing without a window. The threads of the Control keep
+	 * the application alive
+	 * 
+	 * @param name
+	 *            the Kinect Name
+	 * @param port
+	 *            the Broadcast Port
+	 */
+	private static void startHeadless(String name, int port) {
+
+		// The libraries need an applet to create images, it is never shown
+		PApplet applet = new PApplet();
+		Control control = new Control(applet);
+		control.setBroadcast(name, port);
+		control.broadCast(true);
+		control.start();
+		System.out.println("Running headless as " + name + " on port " + port);
+	}
 }
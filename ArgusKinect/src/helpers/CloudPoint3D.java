@@ -28,11 +28,8 @@ public class CloudPoint3D {
 	}
 	
 	public static PVector depthToPointCloudPos(int x, int y, float depthValue) {
-		PVector point = new PVector();
-		point.z = (depthValue) * 0.001f;
-		point.x = (x - CameraParams.cx) * point.z / CameraParams.fx;
-		point.y = (y - CameraParams.cy) * point.z / CameraParams.fy;
-		return point;
+		// in meters
+		return PersonMath.depthToPointCloudPos(x, y, depthValue * 0.001f, new PVector());
 	}
 
 	public PVector getPos() {
@@ -31,4 +31,8 @@ public class Enum {
 	public enum Streams {
 		MASK, DEPTH, INFRARED, PERSON, POINTCLOUD, NOSEND
 	}
+
+	public enum AssignmentMode {
+		GREEDY, HUNGARIAN
+	}
 }
@@ -0,0 +1,178 @@
+package helpers;
+
+/**
+ * Constant velocity Kalman filter for a position in three dimensions. The axes
+ * are filtered independently, so every axis only needs a 2x2 covariance
+ * matrix, which is stored in primitive arrays. Nothing is allocated after
+ * construction.
+ *
+ * Time is given in seconds, so the noise values don't depend on the frame
+ * rate.
+ *
+ * @author Moritz Skowronski
+ *
+ */
+public class KalmanFilter {
+
+	public static final int AXES = 3;
+
+	// State per axis
+	private float[] position;
+	private float[] velocity;
+
+	// Symmetric covariance per axis: [p00 p01; p01 p11]
+	private float[] p00;
+	private float[] p01;
+	private float[] p11;
+
+	// Spectral density of the acceleration per axis
+	private float[] processNoise;
+	// Variance of a measurement per axis
+	private float[] measurementNoise;
+	// Variance of the unknown velocity of a new track per axis
+	private float[] initialVelocityVariance;
+
+	public KalmanFilter() {
+
+		position = new float[AXES];
+		velocity = new float[AXES];
+		p00 = new float[AXES];
+		p01 = new float[AXES];
+		p11 = new float[AXES];
+		processNoise = new float[AXES];
+		measurementNoise = new float[AXES];
+		initialVelocityVariance = new float[AXES];
+	}
+
+	/**
+	 * Sets the noise of an axis
+	 *
+	 * @param axis
+	 * @param processNoise
+	 *            spectral density of the acceleration (units^2 / s^3)
+	 * @param measurementNoise
+	 *            variance of a measurement (units^2)
+	 * @param initialVelocityVariance
+	 *            variance of the velocity of a new track (units^2 / s^2)
+	 */
+	public void setNoise(int axis, float processNoise, float measurementNoise, float initialVelocityVariance) {
+
+		this.processNoise[axis] = processNoise;
+		this.measurementNoise[axis] = measurementNoise;
+		this.initialVelocityVariance[axis] = initialVelocityVariance;
+	}
+
+	/**
+	 * Starts a new track at the given position without velocity
+	 *
+	 * @param x
+	 * @param y
+	 * @param z
+	 */
+	public void reset(float x, float y, float z) {
+
+		position[0] = x;
+		position[1] = y;
+		position[2] = z;
+
+		for (int axis = 0; axis < AXES; axis++) {
+			velocity[axis] = 0;
+			p00[axis] = measurementNoise[axis];
+			p01[axis] = 0;
+			p11[axis] = initialVelocityVariance[axis];
+		}
+	}
+
+	/**
+	 * Moves the state forward in time
+	 *
+	 * @param dt
+	 *            time since the last prediction in seconds
+	 */
+	public void predict(float dt) {
+
+		if (dt <= 0)
+			return;
+
+		float dt2 = dt * dt;
+		float dt3 = dt2 * dt;
+
+		for (int axis = 0; axis < AXES; axis++) {
+
+			position[axis] += velocity[axis] * dt;
+
+			// P = F P F^T + Q
+			float q = processNoise[axis];
+			p00[axis] += 2 * dt * p01[axis] + dt2 * p11[axis] + q * dt3 / 3;
+			p01[axis] += dt * p11[axis] + q * dt2 / 2;
+			p11[axis] += q * dt;
+		}
+	}
+
+	/**
+	 * Corrects the state with a measured position
+	 *
+	 * @param x
+	 * @param y
+	 * @param z
+	 */
+	public void correct(float x, float y, float z) {
+
+		correct(0, x);
+		correct(1, y);
+		correct(2, z);
+	}
+
+	/**
+	 * Corrects a single axis with a measurement
+	 *
+	 * @param axis
+	 * @param measurement
+	 */
+	private void correct(int axis, float measurement) {
+
+		float s = p00[axis] + measurementNoise[axis];
+		float k0 = p00[axis] / s;
+		float k1 = p01[axis] / s;
+		float innovation = measurement - position[axis];
+
+		position[axis] += k0 * innovation;
+		velocity[axis] += k1 * innovation;
+
+		p11[axis] -= k1 * p01[axis];
+		p01[axis] *= 1 - k0;
+		p00[axis] *= 1 - k0;
+	}
+
+	/*------------------Getter------------------*/
+
+	/**
+	 * Returns the estimated position of an axis
+	 *
+	 * @param axis
+	 * @return
+	 */
+	public float getPosition(int axis) {
+		return position[axis];
+	}
+
+	/**
+	 * Returns the estimated velocity of an axis
+	 *
+	 * @param axis
+	 * @return units per second
+	 */
+	public float getVelocity(int axis) {
+		return velocity[axis];
+	}
+
+	/**
+	 * Returns the variance of the estimated position of an axis
+	 *
+	 * @param axis
+	 * @return
+	 */
+	public float getPositionVariance(int axis) {
+		return p00[axis];
+	}
+}
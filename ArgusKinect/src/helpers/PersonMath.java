@@ -2,8 +2,7 @@ package helpers;
 
 import java.util.ArrayList;
 
-import processing.core.PApplet;
-import processing.core.PShape;
+import kinect.AbstractKinect;
 import processing.core.PVector;
 import remixlab.dandelion.geom.Vec;
 import scene.TriggerBox;
@@ -16,15 +15,66 @@ import scene.TriggerBox;
  */
 public class PersonMath {
 
+	/*-------------Lookup Tables-------------*/
+
+	// Undistorted (x - cx) / fx and (y - cy) / fy for every pixel of the
+	// depth image, so the world position of a pixel is its depth times these
+	// factors
+	private static final float[] RAY_X = new float[AbstractKinect.DEPTH_WIDTH * AbstractKinect.DEPTH_HEIGHT];
+	private static final float[] RAY_Y = new float[AbstractKinect.DEPTH_WIDTH * AbstractKinect.DEPTH_HEIGHT];
+
+	// Iterations used to invert the lens distortion
+	private static final int UNDISTORT_ITERATIONS = 10;
+
+	static {
+		for (int y = 0; y < AbstractKinect.DEPTH_HEIGHT; y++) {
+			for (int x = 0; x < AbstractKinect.DEPTH_WIDTH; x++) {
+				int offset = y * AbstractKinect.DEPTH_WIDTH + x;
+				undistort((x - CameraParams.cx) / CameraParams.fx, (y - CameraParams.cy) / CameraParams.fy, offset);
+			}
+		}
+	}
+
+	/**
+	 * Removes the radial (K1, K2, K3) and tangential (P1, P2) lens distortion
+	 * from a normalized image position and stores it in the ray tables. The
+	 * distortion model can't be inverted directly, so the undistorted position
+	 * is found iteratively
+	 * 
+	 * @param distortedX
+	 *            (x - cx) / fx of the pixel
+	 * @param distortedY
+	 *            (y - cy) / fy of the pixel
+	 * @param offset
+	 *            y * DEPTH_WIDTH + x
+	 */
+	private static void undistort(float distortedX, float distortedY, int offset) {
+
+		float x = distortedX;
+		float y = distortedY;
+		for (int i = 0; i < UNDISTORT_ITERATIONS; i++) {
+			float r2 = x * x + y * y;
+			float radial = 1 + r2 * (CameraParams.k1 + r2 * (CameraParams.k2 + r2 * CameraParams.k3));
+			float dx = 2 * CameraParams.p1 * x * y + CameraParams.p2 * (r2 + 2 * x * x);
+			float dy = CameraParams.p1 * (r2 + 2 * y * y) + 2 * CameraParams.p2 * x * y;
+			x = (distortedX - dx) / radial;
+			y = (distortedY - dy) / radial;
+		}
+		RAY_X[offset] = x;
+		RAY_Y[offset] = y;
+	}
+
 	/**
 	 * Test whether a point is inside a Triggerbox
 	 * 
+	 * @deprecated use {@link TriggerBox#contains(float, float, float)} instead
 	 * @param pointToCheck
 	 *            the point to check if it is inside the box
 	 * @param box
 	 *            the box for which to check if the point is inside
 	 * @return
 	 */
+	@Deprecated
 	public static boolean isInsideTriggerBox(PVector pointToCheck, TriggerBox box) {
 
 		// Get the normals for the planes of the vertices and check
@@ -131,13 +181,11 @@ public class PersonMath {
 	/**
 	 * Calculates Bounding box of a Contour
 	 * 
-	 * @param p
-	 *            the Applet, needed for createShape
 	 * @param contour
 	 *            ArrayList<PVector>
-	 * @return jawa.awt.Rectangle of a bounding box
+	 * @return minX, minY, maxX, maxY of the bounding box
 	 */
-	public static PShape getBoundingBox(PApplet p, ArrayList<PVector> contour) {
+	public static float[] getBoundingBox(ArrayList<PVector> contour) {
 		float xMax = 0;
 		float yMax = 0;
 		float xMin = Float.MAX_VALUE;
@@ -180,7 +228,7 @@ public class PersonMath {
 
 		}
 
-		return p.createShape(PApplet.RECT, (int) xMin, (int) yMin, (int) xMax, (int) yMax);
+		return new float[] { (int) xMin, (int) yMin, (int) xMax, (int) yMax };
 	}
 
 	/**
@@ -241,11 +289,55 @@ public class PersonMath {
 	 * @return
 	 */
 	public static PVector depthToPointCloudPos(int x, int y, float depthValue) {
-		PVector point = new PVector();
+		return depthToPointCloudPos(x, y, depthValue, new PVector());
+	}
+
+	/**
+	 * Calculates realworld values from pixel x,y values and real world depth
+	 * values (in millimeters) without allocating a new vector. Positions
+	 * outside of the depth image are clamped to its border
+	 * 
+	 * @param x
+	 *            between 0 and DEPTH_WIDTH - 1
+	 * @param y
+	 *            between 0 and DEPTH_HEIGHT - 1
+	 * @param depthValue
+	 * @param point
+	 *            is filled with the result
+	 * @return the given point
+	 */
+	public static PVector depthToPointCloudPos(int x, int y, float depthValue, PVector point) {
+		x = Math.max(0, Math.min(x, AbstractKinect.DEPTH_WIDTH - 1));
+		y = Math.max(0, Math.min(y, AbstractKinect.DEPTH_HEIGHT - 1));
+		int offset = y * AbstractKinect.DEPTH_WIDTH + x;
+		point.x = RAY_X[offset] * depthValue;
+		point.y = RAY_Y[offset] * depthValue;
 		point.z = depthValue;
-		point.x = (x - CameraParams.cx) * point.z / CameraParams.fx;
-		point.y = (y - CameraParams.cy) * point.z / CameraParams.fy;
 		return point;
 	}
 
+	/**
+	 * Returns the factor the depth of a pixel has to be multiplied with to get
+	 * its real world x value
+	 * 
+	 * @param offset
+	 *            y * DEPTH_WIDTH + x
+	 * @return
+	 */
+	public static float rayX(int offset) {
+		return RAY_X[offset];
+	}
+
+	/**
+	 * Returns the factor the depth of a pixel has to be multiplied with to get
+	 * its real world y value
+	 * 
+	 * @param offset
+	 *            y * DEPTH_WIDTH + x
+	 * @return
+	 */
+	public static float rayY(int offset) {
+		return RAY_Y[offset];
+	}
+
 }
@@ -0,0 +1,102 @@
+package helpers;
+
+/**
+ * Bounded buffer between two threads. If the buffer is full, the oldest item
+ * is dropped to make room for the new one, so a slow consumer always gets the
+ * latest items instead of slowing down the producer.
+ *
+ * @author Moritz Skowronski
+ *
+ * @param <T>
+ */
+public class RingBuffer<T> {
+
+	private Object[] items;
+
+	// index of the oldest item
+	private int head;
+	private int size;
+
+	// number of items that were dropped because the buffer was full
+	private long dropped;
+
+	public RingBuffer(int capacity) {
+
+		items = new Object[Math.max(1, capacity)];
+	}
+
+	/**
+	 * Adds an item. If the buffer is full, the oldest item is removed
+	 *
+	 * @param item
+	 * @return the dropped item or null, if nothing was dropped
+	 */
+	public synchronized T offer(T item) {
+
+		T oldest = null;
+		if (size == items.length) {
+			oldest = removeOldest();
+			dropped++;
+		}
+
+		items[(head + size) % items.length] = item;
+		size++;
+		notifyAll();
+		return oldest;
+	}
+
+	/**
+	 * Removes the oldest item, waits until there is one
+	 *
+	 * @return
+	 * @throws InterruptedException
+	 */
+	public synchronized T take() throws InterruptedException {
+
+		while (size == 0) {
+			wait();
+		}
+		return removeOldest();
+	}
+
+	/**
+	 * Removes the oldest item without waiting
+	 *
+	 * @return the item or null, if the buffer is empty
+	 */
+	public synchronized T poll() {
+
+		if (size == 0)
+			return null;
+		return removeOldest();
+	}
+
+	/**
+	 * Returns the number of items in the buffer
+	 *
+	 * @return
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of items that were dropped because the buffer was
+	 * full
+	 *
+	 * @return
+	 */
+	public synchronized long getDropped() {
+		return dropped;
+	}
+
+	@SuppressWarnings("unchecked")
+	private T removeOldest() {
+
+		T item = (T) items[head];
+		items[head] = null;
+		head = (head + 1) % items.length;
+		size--;
+		return item;
+	}
+}
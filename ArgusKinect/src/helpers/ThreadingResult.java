@@ -4,28 +4,33 @@ import java.util.HashMap;
 import java.util.concurrent.Callable;
 
 import kinect.AbstractKinect;
-import processing.core.PApplet;
-import processing.core.PGraphics;
 import processing.core.PVector;
 import scene.AbstractTriggerZone;
-import scene.TriggerBox;
+import scene.ZoneVoxelGrid;
 
 /**
- * Is used for a multithreaded processing of a maskimage. A maskimage contains
- * only a white silhouette of a person, the rest is black. Checks whether a pixel
- * belongs to a person, if so, check if the pixel belongs to a triggerzone and 
- * add this pixel to further centroid calculation.
+ * Is used for a multithreaded processing of one tile of a label image. A label
+ * image contains the label of the person every pixel belongs to, 0 is
+ * background. Checks whether a pixel belongs to the person, if so, check if the
+ * pixel belongs to a triggerzone and add this pixel to further centroid
+ * calculation.
  * 
  * @author Moritz Skowronski
  *
  */
 public class ThreadingResult implements Callable<ThreadingResult> {
 
+	// marks samples of the adaptive sampling that aren't part of the person
+	private static final long NO_SAMPLE = -1L;
+
 	public PVector centroid;
 
 	public int centroidCounter;
 
-	private PGraphics maskGraphic;
+	// the label of the person this tile is analyzed for
+	public int label;
+
+	private int[] labels;
 
 	private int xstart, xend, ystart, yend;
 
@@ -33,18 +38,32 @@ public class ThreadingResult implements Callable<ThreadingResult> {
 	
 	public HashMap<String, Integer> triggerPoints;
 
-	private int[] rawDepthData;
+	private short[] rawDepthData;
+
+	// world position of the current pixel, reused for all pixels
+	private PVector point;
 
-	private PApplet p;
+	// if set, the zones of a pixel are looked up in the grid, triggerzones are
+	// all zones the grid was built for
+	private ZoneVoxelGrid grid;
+	// the zones of the grid that have to be checked for this tile
+	private long zoneMask;
 
-	public ThreadingResult(AbstractTriggerZone[] zones, int[] rawdepthdata, PGraphics maskGraphic, PApplet p,
-			int xstart, int xend, int ystart, int yend) {
+	// only every stride-th pixel in x and y is sampled, a sample stands for
+	// stride * stride pixels
+	private int stride;
+	// if set, samples whose block is crossed by the border of a zone are
+	// refined to full resolution
+	private boolean adaptive;
+
+	public ThreadingResult(AbstractTriggerZone[] zones, short[] rawdepthdata, int[] labels, int label, int xstart,
+			int xend, int ystart, int yend) {
 
 		centroid = new PVector();
 
 		centroidCounter = 0;
 
-		this.p = p;
+		this.label = label;
 
 		this.xstart = xstart;
 
@@ -58,51 +77,139 @@ public class ThreadingResult implements Callable<ThreadingResult> {
 
 		this.rawDepthData = rawdepthdata;
 
-		this.maskGraphic = maskGraphic;
+		this.labels = labels;
 		
 		triggerPoints = new HashMap<String, Integer>();
+
+		point = new PVector();
+
+		stride = 2;
+
+		adaptive = false;
+	}
+
+	/**
+	 * Creates a tile that looks up the triggerzones of its pixels in a voxel
+	 * grid
+	 * 
+	 * @param zones
+	 *            all zones the grid was built for
+	 * @param grid
+	 * @param zoneMask
+	 *            bitmask of the zones that have to be checked
+	 */
+	public ThreadingResult(AbstractTriggerZone[] zones, ZoneVoxelGrid grid, long zoneMask, short[] rawdepthdata,
+			int[] labels, int label, int xstart, int xend, int ystart, int yend) {
+
+		this(zones, rawdepthdata, labels, label, xstart, xend, ystart, yend);
+
+		this.grid = grid;
+
+		this.zoneMask = zoneMask;
+	}
+
+	/**
+	 * Sets how the pixels of the tile are sampled
+	 * 
+	 * @param stride
+	 *            distance between two samples in x and y
+	 * @param adaptive
+	 *            whether samples whose block is crossed by the border of a zone
+	 *            are refined to full resolution
+	 */
+	public void setSampling(int stride, boolean adaptive) {
+
+		this.stride = Math.max(1, stride);
+
+		this.adaptive = adaptive;
 	}
 
 	@Override
 	public ThreadingResult call() throws Exception {
 
-		// Adding 1 to the bounding box to avoid missing a pixel due to float to
-		// integer casting
-		// TODO performanter von 40 auf 10
-		for (int x = xstart; x < xend; x += 2) {
-			for (int y = ystart; y < yend; y += 2) {
+		// Adaptive sampling keeps the zones of every sample in a bitmask, all
+		// bits set is NO_SAMPLE
+		if (adaptive && stride > 1 && triggerzones.length > 0 && triggerzones.length < Long.SIZE)
+			return callAdaptive();
+
+		for (int x = xstart; x < xend; x += stride) {
+			for (int y = ystart; y < yend; y += stride) {
 
 				int offset = y * AbstractKinect.DEPTH_WIDTH + x;
-				// if the pixel is white, it's part of the person
-				if (maskGraphic.pixels[offset] == p.color(255)) {
+				// if the pixel has the label, it's part of the person
+				if (labels[offset] == label) {
 
 					// Add to Centroid
 					centroid.add(x, y, rawDepthData[offset]);
 					centroidCounter++;
-					// test if inside triggerzone
-					for (int i = 0; i < triggerzones.length; i++) {
-
-						PVector pointToCheck = PersonMath.depthToPointCloudPos(x, y, rawDepthData[offset]);
-
-						// test whether abstract class is triggerbox
-						if (triggerzones[i].getClass() == TriggerBox.class) {
-							if (PersonMath.isInsideTriggerBox(pointToCheck, (TriggerBox) triggerzones[i])) {
-
-								// if so perform check and add points to person
-								// and triggerzone
-								triggerzones[i].addToPoints(4);
-								String id = triggerzones[i].getID();
-								
-								// save which points belong to which triggerzone
-								// This is done, so we can later check which person was 
-								// in the triggerzone since we don't know the id for now
-								if(triggerPoints.containsKey(id))
-									triggerPoints.put(id, triggerPoints.get(id)+4);
-								else
-									triggerPoints.put(id, 4);
-							}
-						}
 
+					// the world position is the same for all triggerzones
+					if (triggerzones.length > 0)
+						classify(PersonMath.depthToPointCloudPos(x, y, rawDepthData[offset], point), weight(x, y));
+				}
+			}
+		}
+
+		return this;
+	}
+
+	/**
+	 * Samples the tile coarsely and only refines the blocks of samples whose
+	 * zones differ from the zones of the next samples, so a zone border runs
+	 * through the block. Blocks completely inside or outside of the zones keep
+	 * the weight of the coarse sample
+	 * 
+	 * @return
+	 */
+	private ThreadingResult callAdaptive() {
+
+		int columns = (xend - xstart + stride - 1) / stride;
+		int rows = (yend - ystart + stride - 1) / stride;
+		// zones of every sample, NO_SAMPLE if the pixel isn't part of the
+		// person. The last column and row lie on the border of the tile, so
+		// the last blocks have a neighbour to compare with
+		int latticeRows = rows + 1;
+		long[] sampleZones = new long[(columns + 1) * latticeRows];
+
+		for (int column = 0; column <= columns; column++) {
+			for (int row = 0; row <= rows; row++) {
+
+				int x = Math.min(xstart + column * stride, xend - 1);
+				int y = Math.min(ystart + row * stride, yend - 1);
+				int offset = y * AbstractKinect.DEPTH_WIDTH + x;
+				if (labels[offset] != label) {
+					sampleZones[column * latticeRows + row] = NO_SAMPLE;
+					continue;
+				}
+
+				if (column < columns && row < rows) {
+					centroid.add(x, y, rawDepthData[offset]);
+					centroidCounter++;
+				}
+				sampleZones[column * latticeRows + row] = zonesAt(
+						PersonMath.depthToPointCloudPos(x, y, rawDepthData[offset], point));
+			}
+		}
+
+		for (int column = 0; column < columns; column++) {
+			for (int row = 0; row < rows; row++) {
+
+				long zones = sampleZones[column * latticeRows + row];
+				if (zones == NO_SAMPLE)
+					continue;
+
+				int x = xstart + column * stride;
+				int y = ystart + row * stride;
+
+				if (differs(zones, sampleZones[(column + 1) * latticeRows + row])
+						|| differs(zones, sampleZones[column * latticeRows + row + 1])
+						|| differs(zones, sampleZones[(column + 1) * latticeRows + row + 1])) {
+					refine(x, y);
+				} else {
+					int weight = weight(x, y);
+					while (zones != 0) {
+						addHit(triggerzones[Long.numberOfTrailingZeros(zones)], weight);
+						zones &= zones - 1;
 					}
 				}
 			}
@@ -111,4 +218,164 @@ public class ThreadingResult implements Callable<ThreadingResult> {
 		return this;
 	}
 
+	/**
+	 * Returns the number of pixels a sample stands for, blocks on the border
+	 * of the tile are cut off
+	 * 
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	private int weight(int x, int y) {
+		return Math.min(stride, xend - x) * Math.min(stride, yend - y);
+	}
+
+	/**
+	 * Tests whether the zones of a neighbouring sample differ. Neighbours that
+	 * aren't part of the person only count, if the sample is inside a zone
+	 * 
+	 * @param zones
+	 * @param neighbour
+	 * @return
+	 */
+	private static boolean differs(long zones, long neighbour) {
+
+		if (neighbour == NO_SAMPLE)
+			return zones != 0;
+		return zones != neighbour;
+	}
+
+	/**
+	 * Tests all pixels of the block of a sample at full resolution
+	 * 
+	 * @param x
+	 *            the sampled pixel
+	 * @param y
+	 *            the sampled pixel
+	 */
+	private void refine(int x, int y) {
+
+		int blockXend = Math.min(x + stride, xend);
+		int blockYend = Math.min(y + stride, yend);
+		for (int blockX = x; blockX < blockXend; blockX++) {
+			for (int blockY = y; blockY < blockYend; blockY++) {
+
+				int offset = blockY * AbstractKinect.DEPTH_WIDTH + blockX;
+				if (labels[offset] == label)
+					classify(PersonMath.depthToPointCloudPos(blockX, blockY, rawDepthData[offset], point), 1);
+			}
+		}
+	}
+
+	/**
+	 * Returns the zones a point is inside as a bitmask of indices into
+	 * triggerzones
+	 * 
+	 * @param point
+	 * @return
+	 */
+	private long zonesAt(PVector point) {
+
+		long inside = 0;
+
+		if (grid != null) {
+
+			int cell = grid.lookup(point.x, point.y, point.z);
+			if (cell == 0)
+				return 0;
+
+			inside = grid.getFullZones(cell) & zoneMask;
+			long zones = grid.getPartialZones(cell) & zoneMask;
+			while (zones != 0) {
+				int zone = Long.numberOfTrailingZeros(zones);
+				if (isInside(triggerzones[zone], point))
+					inside |= 1L << zone;
+				zones &= zones - 1;
+			}
+			return inside;
+		}
+
+		for (int i = 0; i < triggerzones.length; i++) {
+			if (isInside(triggerzones[i], point))
+				inside |= 1L << i;
+		}
+		return inside;
+	}
+
+	/**
+	 * Adds a point to all triggerzones it is inside
+	 * 
+	 * @param point
+	 * @param weight
+	 *            number of pixels the point stands for
+	 */
+	private void classify(PVector point, int weight) {
+
+		if (grid != null) {
+
+			int cell = grid.lookup(point.x, point.y, point.z);
+			if (cell == 0)
+				return;
+
+			// zones containing the whole cell need no test
+			long zones = grid.getFullZones(cell) & zoneMask;
+			while (zones != 0) {
+				addHit(triggerzones[Long.numberOfTrailingZeros(zones)], weight);
+				zones &= zones - 1;
+			}
+
+			zones = grid.getPartialZones(cell) & zoneMask;
+			while (zones != 0) {
+				AbstractTriggerZone zone = triggerzones[Long.numberOfTrailingZeros(zones)];
+				if (isInside(zone, point))
+					addHit(zone, weight);
+				zones &= zones - 1;
+			}
+			return;
+		}
+
+		// test if inside triggerzone
+		for (int i = 0; i < triggerzones.length; i++) {
+
+			if (isInside(triggerzones[i], point)) {
+				addHit(triggerzones[i], weight);
+			}
+		}
+	}
+
+	/**
+	 * Tests whether a point is inside a triggerzone
+	 * 
+	 * @param zone
+	 * @param point
+	 * @return
+	 */
+	private boolean isInside(AbstractTriggerZone zone, PVector point) {
+
+		return zone.contains(point.x, point.y, point.z);
+	}
+
+	/**
+	 * Adds a sampled pixel to a triggerzone
+	 * 
+	 * @param zone
+	 * @param weight
+	 *            number of pixels the sample stands for
+	 */
+	private void addHit(AbstractTriggerZone zone, int weight) {
+
+		// if so perform check and add points to person
+		// and triggerzone
+		zone.addToPoints(weight);
+		String id = zone.getID();
+
+		// save which points belong to which triggerzone
+		// This is done, so we can later check which person was
+		// in the triggerzone since we don't know the id for now
+		if (triggerPoints.containsKey(id))
+			triggerPoints.put(id, triggerPoints.get(id) + weight);
+		else
+			triggerPoints.put(id, weight);
+	}
+
 }
@@ -0,0 +1,361 @@
+package imageProcessing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Statistical model of the background. Holds a running mean and variance of
+ * the depth for every pixel, which are updated with Welford's algorithm during
+ * calibration. Every pixel gets its own threshold based on its standard
+ * deviation, so noisy pixels (edges, far away or reflecting surfaces) don't
+ * show up as changes while steady pixels stay sensitive.
+ *
+ * The model can be saved to a file and loaded by mapping that file into
+ * memory, so a restarted Kinect doesn't need to be calibrated again. The file
+ * starts with a header holding the resolution and a checksum of the data,
+ * models of another resolution or damaged files are rejected.
+ *
+ * @author Moritz Skowronski
+ *
+ */
+public class BackgroundModel {
+
+	// "ARGB" - Argus Background
+	private static final int MAGIC = 0x41524742;
+	private static final int VERSION = 1;
+	// magic, version, width, height, checksum
+	private static final int HEADER_SIZE = 4 * 4 + 8;
+
+	private int width;
+	private int height;
+	private int size;
+
+	private float[] mean;
+
+	// sum of squared differences from the mean
+	private float[] m2;
+
+	// number of samples per pixel, saturates at Short.MAX_VALUE
+	private short[] count;
+
+	// cached threshold per pixel
+	private float[] threshold;
+
+	// how many standard deviations a reading has to differ from the mean
+	private float deviationFactor;
+
+	// the minimum difference for a reading to be recognized as change
+	private float minimumThreshold;
+
+	public BackgroundModel(int width, int height) {
+
+		this.width = width;
+		this.height = height;
+		this.size = width * height;
+
+		mean = new float[size];
+		m2 = new float[size];
+		count = new short[size];
+		threshold = new float[size];
+
+		deviationFactor = 3.0f;
+		minimumThreshold = 100;
+		updateThresholds();
+	}
+
+	/**
+	 * Adds a depth frame to the model (Welford update). Pixels without a depth
+	 * reading are ignored
+	 *
+	 * @param depthData
+	 *            between 0 - 8000
+	 */
+	public void addSample(short[] depthData) {
+
+		for (int i = 0; i < size; i++) {
+
+			int depth = depthData[i];
+			if (depth == 0)
+				continue;
+
+			int n = count[i];
+			if (n < Short.MAX_VALUE) {
+				count[i] = (short) ++n;
+			} else {
+				// keep the variance when the count is saturated
+				m2[i] = m2[i] / n * (n - 1);
+			}
+
+			float delta = depth - mean[i];
+			mean[i] += delta / n;
+			m2[i] += delta * (depth - mean[i]);
+
+			threshold[i] = calculateThreshold(i);
+		}
+	}
+
+	/**
+	 * Slowly blends a depth reading of a single pixel into the model. Used for
+	 * pixels that are not covered by a person, so the background can follow
+	 * changes of the scene. Pixels that have never been calibrated are not
+	 * learned.
+	 *
+	 * @param index
+	 *            the pixel
+	 * @param depth
+	 *            the depth reading of the pixel
+	 * @param learningRate
+	 *            between 0 and 1
+	 */
+	public void learn(int index, int depth, float learningRate) {
+
+		int n = count[index];
+		if (depth == 0 || n == 0)
+			return;
+
+		// exponentially weighted mean and variance
+		float delta = depth - mean[index];
+		float variance = m2[index] / n;
+		variance = (1 - learningRate) * (variance + learningRate * delta * delta);
+		mean[index] += learningRate * delta;
+		m2[index] = variance * n;
+
+		threshold[index] = calculateThreshold(index);
+	}
+
+	/**
+	 * Checks whether a depth reading differs from the background
+	 *
+	 * @param index
+	 *            the pixel
+	 * @param depth
+	 *            the depth reading of the pixel
+	 * @return true, if the reading is not part of the background
+	 */
+	public boolean isForeground(int index, int depth) {
+
+		float difference = depth - mean[index];
+		return difference > threshold[index] || difference < -threshold[index];
+	}
+
+	/**
+	 * Removes all samples from the model
+	 */
+	public void reset() {
+
+		for (int i = 0; i < size; i++) {
+			mean[i] = 0;
+			m2[i] = 0;
+			count[i] = 0;
+		}
+		updateThresholds();
+	}
+
+	/**
+	 * Saves the model to a file. The file is written through its channel and
+	 * not mapped, because a mapping can't be released explicitly and a mapped
+	 * file can't be resized on Windows
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+
+		int length = HEADER_SIZE + size * (4 + 4 + 2);
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+
+		// Data first, so the checksum can be calculated over it
+		buffer.position(HEADER_SIZE);
+		ByteBuffer data = buffer.slice();
+		data.asFloatBuffer().put(mean);
+		data.position(size * 4);
+		data.slice().asFloatBuffer().put(m2);
+		data.position(size * 8);
+		data.slice().asShortBuffer().put(count);
+		data.rewind();
+
+		buffer.rewind();
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(width);
+		buffer.putInt(height);
+		buffer.putLong(checksum(data));
+		buffer.rewind();
+
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+				FileChannel channel = randomAccessFile.getChannel()) {
+
+			// A file loaded before may still be mapped, so it is only resized
+			// if it has to
+			if (channel.size() != length)
+				randomAccessFile.setLength(length);
+
+			channel.position(0);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(false);
+		}
+	}
+
+	/**
+	 * Loads the model from a memory mapped file. Models with another
+	 * resolution or a wrong checksum are rejected and the current model is
+	 * kept.
+	 *
+	 * @param file
+	 * @return true, if the model was loaded
+	 * @throws IOException
+	 */
+	public boolean load(File file) throws IOException {
+
+		int length = HEADER_SIZE + size * (4 + 4 + 2);
+
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+				FileChannel channel = randomAccessFile.getChannel()) {
+
+			if (channel.size() != length) {
+				System.err.println("Background model " + file + " has the wrong size");
+				return false;
+			}
+
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+				System.err.println("Background model " + file + " has an unknown format");
+				return false;
+			}
+			if (buffer.getInt() != width || buffer.getInt() != height) {
+				System.err.println("Background model " + file + " was made for another resolution");
+				return false;
+			}
+			long expectedChecksum = buffer.getLong();
+
+			ByteBuffer data = buffer.slice();
+			if (checksum(data) != expectedChecksum) {
+				System.err.println("Background model " + file + " is damaged");
+				return false;
+			}
+
+			data.rewind();
+			data.asFloatBuffer().get(mean);
+			data.position(size * 4);
+			data.slice().asFloatBuffer().get(m2);
+			data.position(size * 8);
+			data.slice().asShortBuffer().get(count);
+		}
+
+		updateThresholds();
+		return true;
+	}
+
+	/**
+	 * Calculates the CRC32 checksum of the remaining bytes of a buffer
+	 *
+	 * @param data
+	 * @return
+	 */
+	private static long checksum(ByteBuffer data) {
+
+		CRC32 crc = new CRC32();
+		crc.update(data.duplicate());
+		return crc.getValue();
+	}
+
+	/**
+	 * Calculates the threshold of a pixel from its variance
+	 *
+	 * @param index
+	 * @return
+	 */
+	private float calculateThreshold(int index) {
+
+		int n = count[index];
+		if (n < 2)
+			return minimumThreshold;
+		float deviation = (float) Math.sqrt(m2[index] / n);
+		return Math.max(minimumThreshold, deviationFactor * deviation);
+	}
+
+	/**
+	 * Recalculates all cached thresholds
+	 */
+	private void updateThresholds() {
+
+		for (int i = 0; i < size; i++) {
+			threshold[i] = calculateThreshold(i);
+		}
+	}
+
+	/*------------------Getter------------------*/
+
+	/**
+	 * Returns the mean depth of a pixel
+	 *
+	 * @param index
+	 * @return
+	 */
+	public float getMean(int index) {
+		return mean[index];
+	}
+
+	/**
+	 * Returns the variance of the depth of a pixel
+	 *
+	 * @param index
+	 * @return
+	 */
+	public float getVariance(int index) {
+		int n = count[index];
+		return n == 0 ? 0 : m2[index] / n;
+	}
+
+	/**
+	 * Returns the number of samples of a pixel
+	 *
+	 * @param index
+	 * @return
+	 */
+	public int getCount(int index) {
+		return count[index];
+	}
+
+	public float getDeviationFactor() {
+		return deviationFactor;
+	}
+
+	public float getMinimumThreshold() {
+		return minimumThreshold;
+	}
+
+	/*------------------Setter------------------*/
+
+	/**
+	 * Sets how many standard deviations a reading has to differ from the mean
+	 * to be recognized as change
+	 *
+	 * @param deviationFactor
+	 */
+	public void setDeviationFactor(float deviationFactor) {
+		this.deviationFactor = deviationFactor;
+		updateThresholds();
+	}
+
+	/**
+	 * Sets the minimum difference for a reading to be recognized as change
+	 *
+	 * @param minimumThreshold
+	 */
+	public void setMinimumThreshold(float minimumThreshold) {
+		if (this.minimumThreshold == minimumThreshold)
+			return;
+		this.minimumThreshold = minimumThreshold;
+		updateThresholds();
+	}
+
+}
@@ -0,0 +1,418 @@
+package imageProcessing;
+
+import java.util.Arrays;
+
+/**
+ * Labels the 8-connected components of a binary mask using union-find. All
+ * statistics of a component (area, bounding box, centroid and depth range) are
+ * collected during the same raster sweep that assigns the provisional labels,
+ * so persons can be built from the statistics without looking at the pixels
+ * again. A second, cheap pass only replaces the provisional labels in the label
+ * image with the final ones.
+ *
+ * Labels start at 1, 0 is background.
+ *
+ * @author Moritz Skowronski
+ *
+ */
+public class ConnectedComponents {
+
+	private int width;
+	private int height;
+
+	private int[] labels;
+
+	// number of final components
+	private int count;
+
+	// union-find forest over the provisional labels
+	private int[] parent;
+
+	// final label of a provisional label
+	private int[] finalLabel;
+
+	/*---------------Statistics---------------*/
+	private int[] area;
+	private int[] minX;
+	private int[] minY;
+	private int[] maxX;
+	private int[] maxY;
+	private long[] sumX;
+	private long[] sumY;
+	private long[] sumDepth;
+	private int[] minDepth;
+	private int[] maxDepth;
+	// number of pixels with a valid depth reading
+	private int[] depthCount;
+
+	public ConnectedComponents(int width, int height) {
+
+		this.width = width;
+		this.height = height;
+
+		labels = new int[width * height];
+		ensureCapacity(256);
+	}
+
+	/**
+	 * Labels all connected components of the mask
+	 *
+	 * @param mask
+	 *            every pixel that is not 0 is foreground
+	 * @param depthData
+	 *            depth values used for the depth statistics
+	 * @return number of components
+	 */
+	public int label(byte[] mask, short[] depthData) {
+
+		int provisional = 0;
+
+		for (int y = 0; y < height; y++) {
+
+			int offset = y * width;
+			for (int x = 0; x < width; x++, offset++) {
+
+				if (mask[offset] == 0) {
+					labels[offset] = 0;
+					continue;
+				}
+
+				// Only the already visited neighbours are relevant
+				int w = x > 0 ? labels[offset - 1] : 0;
+				int nw = 0, n = 0, ne = 0;
+				if (y > 0) {
+					int above = offset - width;
+					nw = x > 0 ? labels[above - 1] : 0;
+					n = labels[above];
+					ne = x < width - 1 ? labels[above + 1] : 0;
+				}
+
+				int label;
+				if (n != 0) {
+					// all other neighbours touch n, so they are already joined
+					label = n;
+				} else if (nw != 0) {
+					label = nw;
+					if (ne != 0)
+						union(nw, ne);
+				} else if (ne != 0) {
+					label = ne;
+					if (w != 0)
+						union(ne, w);
+				} else if (w != 0) {
+					label = w;
+				} else {
+					label = ++provisional;
+					ensureCapacity(provisional + 1);
+					parent[label] = label;
+					area[label] = 0;
+					minX[label] = x;
+					minY[label] = y;
+					maxX[label] = x;
+					maxY[label] = y;
+					sumX[label] = 0;
+					sumY[label] = 0;
+					sumDepth[label] = 0;
+					minDepth[label] = Integer.MAX_VALUE;
+					maxDepth[label] = 0;
+					depthCount[label] = 0;
+				}
+
+				labels[offset] = label;
+
+				// Collect statistics for the provisional label
+				area[label]++;
+				if (x < minX[label])
+					minX[label] = x;
+				if (x > maxX[label])
+					maxX[label] = x;
+				// rows are visited in order, so only the maximum can change
+				maxY[label] = y;
+				sumX[label] += x;
+				sumY[label] += y;
+				int depth = depthData[offset];
+				if (depth != 0) {
+					sumDepth[label] += depth;
+					if (depth < minDepth[label])
+						minDepth[label] = depth;
+					if (depth > maxDepth[label])
+						maxDepth[label] = depth;
+					depthCount[label]++;
+				}
+			}
+		}
+
+		resolve(provisional);
+
+		// Replace provisional labels with the final ones
+		for (int i = 0; i < labels.length; i++) {
+			labels[i] = finalLabel[labels[i]];
+		}
+
+		return count;
+	}
+
+	/**
+	 * Assigns consecutive final labels to all roots and merges the statistics of
+	 * all provisional labels into their root. Roots are always the smallest
+	 * label of their set, so the statistics can be compacted in place.
+	 *
+	 * @param provisional
+	 *            number of provisional labels
+	 */
+	private void resolve(int provisional) {
+
+		count = 0;
+		finalLabel[0] = 0;
+
+		for (int label = 1; label <= provisional; label++) {
+
+			int root = find(label);
+
+			if (root == label) {
+				int target = ++count;
+				finalLabel[label] = target;
+
+				area[target] = area[label];
+				minX[target] = minX[label];
+				minY[target] = minY[label];
+				maxX[target] = maxX[label];
+				maxY[target] = maxY[label];
+				sumX[target] = sumX[label];
+				sumY[target] = sumY[label];
+				sumDepth[target] = sumDepth[label];
+				minDepth[target] = minDepth[label];
+				maxDepth[target] = maxDepth[label];
+				depthCount[target] = depthCount[label];
+			} else {
+				int target = finalLabel[root];
+				finalLabel[label] = target;
+
+				area[target] += area[label];
+				minX[target] = Math.min(minX[target], minX[label]);
+				minY[target] = Math.min(minY[target], minY[label]);
+				maxX[target] = Math.max(maxX[target], maxX[label]);
+				maxY[target] = Math.max(maxY[target], maxY[label]);
+				sumX[target] += sumX[label];
+				sumY[target] += sumY[label];
+				sumDepth[target] += sumDepth[label];
+				minDepth[target] = Math.min(minDepth[target], minDepth[label]);
+				maxDepth[target] = Math.max(maxDepth[target], maxDepth[label]);
+				depthCount[target] += depthCount[label];
+			}
+		}
+	}
+
+	/**
+	 * Finds the root of a label and compresses the path
+	 *
+	 * @param label
+	 * @return root label
+	 */
+	private int find(int label) {
+
+		int root = label;
+		while (parent[root] != root) {
+			root = parent[root];
+		}
+		while (parent[label] != root) {
+			int next = parent[label];
+			parent[label] = root;
+			label = next;
+		}
+		return root;
+	}
+
+	/**
+	 * Joins the sets of two labels, the smaller root becomes the new root
+	 *
+	 * @param a
+	 * @param b
+	 */
+	private void union(int a, int b) {
+
+		int rootA = find(a);
+		int rootB = find(b);
+		if (rootA < rootB)
+			parent[rootB] = rootA;
+		else if (rootB < rootA)
+			parent[rootA] = rootB;
+	}
+
+	/**
+	 * Grows all label sized arrays if necessary
+	 *
+	 * @param size
+	 */
+	private void ensureCapacity(int size) {
+
+		if (parent != null && parent.length >= size)
+			return;
+
+		int capacity = parent == null ? size : Math.max(size, parent.length * 2);
+
+		if (parent == null) {
+			parent = new int[capacity];
+			finalLabel = new int[capacity];
+			area = new int[capacity];
+			minX = new int[capacity];
+			minY = new int[capacity];
+			maxX = new int[capacity];
+			maxY = new int[capacity];
+			sumX = new long[capacity];
+			sumY = new long[capacity];
+			sumDepth = new long[capacity];
+			minDepth = new int[capacity];
+			maxDepth = new int[capacity];
+			depthCount = new int[capacity];
+		} else {
+			parent = Arrays.copyOf(parent, capacity);
+			finalLabel = Arrays.copyOf(finalLabel, capacity);
+			area = Arrays.copyOf(area, capacity);
+			minX = Arrays.copyOf(minX, capacity);
+			minY = Arrays.copyOf(minY, capacity);
+			maxX = Arrays.copyOf(maxX, capacity);
+			maxY = Arrays.copyOf(maxY, capacity);
+			sumX = Arrays.copyOf(sumX, capacity);
+			sumY = Arrays.copyOf(sumY, capacity);
+			sumDepth = Arrays.copyOf(sumDepth, capacity);
+			minDepth = Arrays.copyOf(minDepth, capacity);
+			maxDepth = Arrays.copyOf(maxDepth, capacity);
+			depthCount = Arrays.copyOf(depthCount, capacity);
+		}
+	}
+
+	/*------------------Getter------------------*/
+
+	/**
+	 * Returns the label image, every pixel holds the label of its component
+	 *
+	 * @return
+	 */
+	public int[] getLabels() {
+		return labels;
+	}
+
+	/**
+	 * Returns the label of a pixel
+	 *
+	 * @param x
+	 * @param y
+	 * @return label, 0 if background or outside of the image
+	 */
+	public int getLabel(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height)
+			return 0;
+		return labels[y * width + x];
+	}
+
+	/**
+	 * Returns the number of components
+	 *
+	 * @return
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the number of pixels of a component
+	 *
+	 * @param label
+	 * @return
+	 */
+	public int getArea(int label) {
+		return area[label];
+	}
+
+	public int getMinX(int label) {
+		return minX[label];
+	}
+
+	public int getMinY(int label) {
+		return minY[label];
+	}
+
+	public int getMaxX(int label) {
+		return maxX[label];
+	}
+
+	public int getMaxY(int label) {
+		return maxY[label];
+	}
+
+	/**
+	 * Returns the average x position of all pixels of a component
+	 *
+	 * @param label
+	 * @return
+	 */
+	public float getCentroidX(int label) {
+		return (float) sumX[label] / area[label];
+	}
+
+	/**
+	 * Returns the average y position of all pixels of a component
+	 *
+	 * @param label
+	 * @return
+	 */
+	public float getCentroidY(int label) {
+		return (float) sumY[label] / area[label];
+	}
+
+	/**
+	 * Returns the average depth of all pixels of a component with a valid depth
+	 * reading
+	 *
+	 * @param label
+	 * @return average depth in millimeters, 0 if there was no valid reading
+	 */
+	public float getAverageDepth(int label) {
+		if (depthCount[label] == 0)
+			return 0;
+		return (float) sumDepth[label] / depthCount[label];
+	}
+
+	/**
+	 * Returns the sum of all valid depth readings of a component
+	 *
+	 * @param label
+	 * @return
+	 */
+	public long getDepthSum(int label) {
+		return sumDepth[label];
+	}
+
+	/**
+	 * Returns the smallest valid depth reading of a component
+	 * 
+	 * @param label
+	 * @return depth in millimeters, 0 if there was no valid reading
+	 */
+	public int getMinDepth(int label) {
+		if (depthCount[label] == 0)
+			return 0;
+		return minDepth[label];
+	}
+
+	/**
+	 * Returns the biggest valid depth reading of a component
+	 * 
+	 * @param label
+	 * @return depth in millimeters, 0 if there was no valid reading
+	 */
+	public int getMaxDepth(int label) {
+		return maxDepth[label];
+	}
+
+	/**
+	 * Returns the number of pixels of a component with a valid depth reading
+	 *
+	 * @param label
+	 * @return
+	 */
+	public int getDepthCount(int label) {
+		return depthCount[label];
+	}
+}
@@ -1,11 +1,14 @@
 package imageProcessing;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 
 import gab.opencv.Contour;
 import gab.opencv.OpenCV;
 import processing.core.PApplet;
 import processing.core.PImage;
+import processing.core.PVector;
 
 /**
  * This class performs Computer Vision Operations to difference possible Persons
@@ -24,9 +27,29 @@ public class ImageProcessor2D {
 	private OpenCV cv;
 
 	private PImage differencedImage;
+
+	// Result of the background subtraction, 255 for changed pixels, else 0
+	private byte[] differenceMask;
+
+	// true if the differenced image doesn't show the current mask yet
+	private boolean differencedImageOutdated;
 	private ArrayList<Contour> contours;
+	private ArrayList<Contour> ownContours;
+
+	// Mask after dilating and eroding, input for the component labelling
+	private byte[] morphologyMask;
+	private ConnectedComponents components;
+	// used if the caller doesn't give its own components and contours
+	private ConnectedComponents ownComponents;
 
-	private int[] calibratedDepthValues;
+	private BackgroundModel backgroundModel;
+
+	// components that belong to a person, these aren't learned
+	private boolean[] personComponents;
+
+	// how fast pixels that aren't covered by a person are blended into the
+	// background, 0 disables learning
+	private float learningRate;
 
 	private int differenceThreshold;
 	private int blobSize;
@@ -34,14 +57,25 @@ public class ImageProcessor2D {
 	public ImageProcessor2D(PApplet p, int width, int height) {
 		this.p = p;
 		this.cv = new OpenCV(this.p, width, height);
+		this.cv.useGray();
 
 		differencedImage = this.p.createImage(width, height, PApplet.RGB);
-		contours = new ArrayList<Contour>();
+		differenceMask = new byte[width * height];
+		ownContours = new ArrayList<Contour>();
+		contours = ownContours;
+		morphologyMask = new byte[width * height];
+		ownComponents = new ConnectedComponents(width, height);
+		components = ownComponents;
 
 		differenceThreshold = 100;
 		blobSize = 5000;
 
-		calibratedDepthValues = new int[width * height];
+		backgroundModel = new BackgroundModel(width, height);
+		backgroundModel.setMinimumThreshold(differenceThreshold);
+		personComponents = new boolean[0];
+		// learning costs a second pass over the image, it is off until the
+		// Settings enable it
+		learningRate = 0;
 	}
 
 	/**
@@ -51,75 +85,153 @@ public class ImageProcessor2D {
 	 * @param depthData
 	 *            the depthData to be processed
 	 */
-	public void process(int[] depthData) {
+	public void process(short[] depthData) {
+
+		process(depthData, ownComponents, ownContours);
+	}
+
+	/**
+	 * Processes the input Data like {@link #process(short[])}, but writes the
+	 * components and contours into the given objects, so the results can be
+	 * handed to another thread while the next frame is processed
+	 * 
+	 * @param depthData
+	 *            the depthData to be processed
+	 * @param components
+	 *            is filled with the components of the silhouettes
+	 * @param contours
+	 *            is filled with the contours of the persons
+	 */
+	public void process(short[] depthData, ConnectedComponents components, ArrayList<Contour> contours) {
+
+		this.components = components;
+		this.contours = contours;
+
 		// subtracts new image from old image
 		backgroundSubtraction(depthData);
 
 		// finds Persons in that Subtraction
-		findContours();
+		findContours(depthData);
+
+		// lets the background follow slow changes of the scene
+		if (learningRate > 0)
+			learnBackground(depthData);
 	}
 
 	/*-------------Image Processing-------------*/
 
-	/*
-	 * Calculates a depth average for all pixels to catch false readings
+	/**
+	 * Adds the depth frame to the statistical background model
+	 * 
+	 * @param depthData
+	 *            between 0 - 8000
+	 */
+	public void calibrate(short[] depthData) {
+
+		backgroundModel.addSample(depthData);
+	}
+
+	/**
+	 * Removes all samples from the background model, called before a new
+	 * calibration, so the old background doesn't mix with the new one
+	 */
+	public void resetBackgroundModel() {
+
+		backgroundModel.reset();
+	}
+
+	/**
+	 * Saves the background model, so it can be restored after a restart
+	 * 
+	 * @param file
+	 * @throws IOException
+	 */
+	public void saveBackgroundModel(File file) throws IOException {
+
+		backgroundModel.save(file);
+	}
+
+	/**
+	 * Loads a previously saved background model. Stale models with another
+	 * resolution or a wrong checksum are rejected
+	 * 
+	 * @param file
+	 * @return true, if the model was loaded
+	 * @throws IOException
+	 */
+	public boolean loadBackgroundModel(File file) throws IOException {
+
+		return backgroundModel.load(file);
+	}
+
+	/**
+	 * Blends all pixels that are not covered by a person into the background
+	 * model
+	 * 
+	 * @param depthData
+	 *            between 0 - 8000
 	 */
-	public void calibrate(int[] depthData) {
+	private void learnBackground(short[] depthData) {
 
+		int[] labels = components.getLabels();
 		for (int i = 0; i < depthData.length; i++) {
-			if (depthData[i] != 0) {
-				if (calibratedDepthValues[i] != 0) {
-					// calculates average of old and new depth Reading
-					calibratedDepthValues[i] = (calibratedDepthValues[i] + depthData[i]) / 2;
-				} else {
-					// If there was no depth Reading or the Reading was 0,
-					// use
-					// the new Reading
-					calibratedDepthValues[i] = depthData[i];
-				}
+			if (!personComponents[labels[i]]) {
+				backgroundModel.learn(i, depthData[i], learningRate);
 			}
 		}
 	}
 
 	/**
-	 * Subtracts the current image from the calibrated Image, leaving only the
-	 * changes in depth marked white.
+	 * Subtracts the current image from the background model, leaving only the
+	 * changes in depth marked white. Every pixel uses its own threshold. Only
+	 * the primitive mask is written here, the differenced image is created
+	 * when it is requested.
 	 * 
 	 * @param depthData
 	 *            between 0 - 8000
 	 */
-	private void backgroundSubtraction(int[] depthData) {
+	private void backgroundSubtraction(short[] depthData) {
 
-		differencedImage.loadPixels();
 		for (int i = 0; i < depthData.length; i++) {
 
-			if (depthData[i] == 0) {
-				differencedImage.pixels[i] = p.color(0);
+			int depth = depthData[i];
+			if (depth != 0 && backgroundModel.isForeground(i, depth)) {
+				differenceMask[i] = (byte) 255;
 			} else {
-				if (PApplet.abs(depthData[i] - calibratedDepthValues[i]) > differenceThreshold) {
-					differencedImage.pixels[i] = p.color(255);
-				} else {
-					differencedImage.pixels[i] = p.color(0);
-				}
+				differenceMask[i] = 0;
 			}
 		}
-		differencedImage.updatePixels();
+		differencedImageOutdated = true;
 	}
 
 	/**
-	 * Finds Silhouettes and their contours in an image
+	 * Finds Silhouettes and their contours in an image. Also labels the
+	 * connected components of the silhouettes, so persons can be built from
+	 * their statistics
+	 * 
+	 * @param depthData
+	 *            the depthData used for the component statistics
 	 */
-	private void findContours() {
+	private void findContours(short[] depthData) {
 
 		contours.clear();
 
-		// Load differenced image into opencv
-		cv.loadImage(differencedImage);
+		// Load differenced mask into opencv
+		cv.getGray().put(0, 0, differenceMask);
 
 		// Dilate and Erode for better recognition
 		cv.dilate();
 		cv.erode();
 
+		// findContours alters the image, so read the mask first
+		cv.getGray().get(0, 0, morphologyMask);
+		int componentCount = components.label(morphologyMask, depthData);
+		if (personComponents.length <= componentCount)
+			personComponents = new boolean[componentCount + 1];
+		for (int i = 0; i <= componentCount; i++) {
+			personComponents[i] = false;
+		}
+
 		// if the Area of the contour is smaller than the threshold, disregard
 		// it
 		for (Contour contour : cv.findContours()) {
@@ -127,6 +239,11 @@ public class ImageProcessor2D {
 			if (contour.area() < blobSize)
 				continue;
 
+			if (!contour.getPoints().isEmpty()) {
+				PVector point = contour.getPoints().get(0);
+				personComponents[components.getLabel((int) point.x, (int) point.y)] = true;
+			}
+
 			// Add z component to contour
 			contours.add(contour);
 		}
@@ -136,7 +253,8 @@ public class ImageProcessor2D {
 
 	/**
 	 * Returns the minimum difference in depth between an old and new pixel for
-	 * the pixel to be recognized as changed pixel
+	 * the pixel to be recognized as changed pixel. Noisy pixels use a higher
+	 * threshold based on their standard deviation.
 	 * 
 	 * @return
 	 */
@@ -151,9 +269,47 @@ public class ImageProcessor2D {
 	 * @return
 	 */
 	public PImage getDifferencedImage() {
+
+		if (differencedImageOutdated) {
+			differencedImage.loadPixels();
+			for (int i = 0; i < differenceMask.length; i++) {
+				differencedImage.pixels[i] = differenceMask[i] != 0 ? 0xFFFFFFFF : 0xFF000000;
+			}
+			differencedImage.updatePixels();
+			differencedImageOutdated = false;
+		}
 		return differencedImage;
 	}
 
+	/**
+	 * Returns the mask derived from comparing the depth background image with
+	 * the current depth image. Differences are 255, the rest is 0
+	 * 
+	 * @return
+	 */
+	public byte[] getDifferenceMask() {
+		return differenceMask;
+	}
+
+	/**
+	 * Returns the statistical background model
+	 * 
+	 * @return
+	 */
+	public BackgroundModel getBackgroundModel() {
+		return backgroundModel;
+	}
+
+	/**
+	 * Returns the connected components of the silhouettes the contours were
+	 * found in
+	 * 
+	 * @return
+	 */
+	public ConnectedComponents getComponents() {
+		return components;
+	}
+
 	/**
 	 * Returns the Contours derived from Image Processing
 	 * 
@@ -173,6 +329,28 @@ public class ImageProcessor2D {
 	 */
 	public void setDifferenceThreshold(int differenceThreshold) {
 		this.differenceThreshold = differenceThreshold;
+		backgroundModel.setMinimumThreshold(differenceThreshold);
+	}
+
+	/**
+	 * Sets how many standard deviations a depth reading has to differ from the
+	 * background to be recognized as changed pixel
+	 * 
+	 * @param deviationFactor
+	 */
+	public void setDeviationFactor(float deviationFactor) {
+		backgroundModel.setDeviationFactor(deviationFactor);
+	}
+
+	/**
+	 * Sets how fast pixels that are not covered by a person are blended into
+	 * the background. 0 disables learning
+	 * 
+	 * @param learningRate
+	 *            between 0 and 1
+	 */
+	public void setLearningRate(float learningRate) {
+		this.learningRate = learningRate;
 	}
 
 	/**
@@ -0,0 +1,164 @@
+package imageProcessing;
+
+import java.util.ArrayList;
+
+import processing.core.PVector;
+
+/**
+ * Fills polygons into an int buffer using a scanline algorithm with an edge
+ * table and an active edge list. Works completely on the CPU, so no OpenGL
+ * context is needed. All internal arrays are reused between calls and only
+ * grow if a polygon has more edges than any polygon before.
+ *
+ * @author Moritz Skowronski
+ *
+ */
+public class ScanlineFiller {
+
+	private int width;
+	private int height;
+
+	// Edge Table: start point, slope and the first scanline after the edge
+	private float[] edgeX;
+	private float[] edgeY;
+	private float[] edgeSlope;
+	private int[] edgeYEnd;
+
+	// Linked lists of all edges starting in a row
+	private int[] edgeNext;
+	private int[] rowHead;
+
+	// Active Edge List
+	private int[] active;
+	private float[] intersections;
+
+	public ScanlineFiller(int width, int height) {
+
+		this.width = width;
+		this.height = height;
+
+		rowHead = new int[height];
+		ensureCapacity(256);
+	}
+
+	/**
+	 * Fills the inside of a polygon (even-odd rule) with the label. The buffer
+	 * is not cleared before.
+	 *
+	 * @param polygon
+	 *            the vertices of the polygon in pixel coordinates, the polygon
+	 *            is closed automatically
+	 * @param step
+	 *            only every step-th vertex is used
+	 * @param buffer
+	 *            buffer of size width * height
+	 * @param label
+	 *            the value written into every pixel inside the polygon
+	 */
+	public void fill(ArrayList<PVector> polygon, int step, int[] buffer, int label) {
+
+		int vertices = (polygon.size() + step - 1) / step;
+		if (vertices < 3)
+			return;
+
+		ensureCapacity(vertices);
+
+		for (int i = 0; i < height; i++) {
+			rowHead[i] = -1;
+		}
+
+		// Build the Edge Table
+		int edges = 0;
+		int firstRow = height;
+		int lastRow = -1;
+		for (int i = 0; i < vertices; i++) {
+
+			PVector start = polygon.get(i * step);
+			PVector end = polygon.get(((i + 1) % vertices) * step);
+
+			// Horizontal edges never cross a scanline
+			if (start.y == end.y)
+				continue;
+
+			PVector top = start.y < end.y ? start : end;
+			PVector bottom = start.y < end.y ? end : start;
+
+			// Edges are half open, so vertices aren't counted twice
+			int rowStart = Math.max((int) Math.ceil(top.y), 0);
+			int rowEnd = Math.min((int) Math.ceil(bottom.y), height);
+			if (rowStart >= rowEnd)
+				continue;
+
+			edgeX[edges] = top.x;
+			edgeY[edges] = top.y;
+			edgeSlope[edges] = (bottom.x - top.x) / (bottom.y - top.y);
+			edgeYEnd[edges] = rowEnd;
+			edgeNext[edges] = rowHead[rowStart];
+			rowHead[rowStart] = edges;
+			edges++;
+
+			firstRow = Math.min(firstRow, rowStart);
+			lastRow = Math.max(lastRow, rowEnd);
+		}
+
+		// Walk all scanlines and fill the spans between pairs of intersections
+		int activeCount = 0;
+		for (int y = firstRow; y < lastRow; y++) {
+
+			for (int edge = rowHead[y]; edge != -1; edge = edgeNext[edge]) {
+				active[activeCount++] = edge;
+			}
+
+			int intersectionCount = 0;
+			for (int i = 0; i < activeCount; i++) {
+
+				int edge = active[i];
+				if (edgeYEnd[edge] <= y) {
+					// remove edge, the last one takes its place
+					active[i--] = active[--activeCount];
+					continue;
+				}
+
+				float x = edgeX[edge] + (y - edgeY[edge]) * edgeSlope[edge];
+
+				// Insertion sort, there are only a few intersections per line
+				int j = intersectionCount++;
+				while (j > 0 && intersections[j - 1] > x) {
+					intersections[j] = intersections[j - 1];
+					j--;
+				}
+				intersections[j] = x;
+			}
+
+			int offset = y * width;
+			for (int i = 0; i + 1 < intersectionCount; i += 2) {
+
+				int xstart = Math.max((int) Math.ceil(intersections[i]), 0);
+				int xend = Math.min((int) Math.floor(intersections[i + 1]), width - 1);
+				for (int x = xstart; x <= xend; x++) {
+					buffer[offset + x] = label;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Grows the internal arrays if necessary
+	 *
+	 * @param edges
+	 *            the number of edges that have to fit
+	 */
+	private void ensureCapacity(int edges) {
+
+		if (edgeX != null && edgeX.length >= edges)
+			return;
+
+		edgeX = new float[edges];
+		edgeY = new float[edges];
+		edgeSlope = new float[edges];
+		edgeYEnd = new int[edges];
+		edgeNext = new int[edges];
+		active = new int[edges];
+		intersections = new float[edges];
+	}
+}
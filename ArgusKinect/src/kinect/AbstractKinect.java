@@ -1,5 +1,7 @@
 package kinect;
 
+import java.util.ArrayDeque;
+
 import processing.core.PImage;
 
 /**
@@ -7,6 +9,9 @@ import processing.core.PImage;
  * Kinect regardless of Operating System. TODO In further work, add automatic or
  * manual change between own image processing and normal Body Tracking.
  * 
+ * The depth images are published as pooled {@link DepthFrame}s, so they can be
+ * read by several threads without copying them.
+ * 
  * @author Moritz Skowronski
  *
  */
@@ -17,6 +22,12 @@ public abstract class AbstractKinect {
 	public static final int COLOR_WIDTH = 1920;
 	public static final int COLOR_HEIGHT = 1080;
 
+	// Frames nobody holds anymore
+	private ArrayDeque<DepthFrame> freeFrames = new ArrayDeque<DepthFrame>();
+	// The latest frame, held by the Kinect until the next one is published
+	private DepthFrame latestFrame;
+	private long frameSequence;
+
 	/**
 	 * Starts up the Kinect, enables all relevant Images
 	 */
@@ -67,10 +78,82 @@ public abstract class AbstractKinect {
 	abstract public void updateBodyTrackImage();
 
 	/**
-	 * Raw Kinect Depth data. 
+	 * Raw Kinect Depth data. This is the live array of the library, which can
+	 * change at any time.
+	 * 
 	 * @return int array of raw depth per pixel (512 * 424)
+	 * @deprecated use {@link #acquireDepthFrame()}
 	 */
+	@Deprecated
 	abstract public int[] getRawDepthData();
+
+	/*--------------Depth Frames--------------*/
+
+	/**
+	 * Returns the latest depth frame. The frame has to be released by the
+	 * caller when it isn't needed anymore
+	 * 
+	 * @return the frame or null, if there is no depth image yet
+	 */
+	public synchronized DepthFrame acquireDepthFrame() {
+
+		if (latestFrame == null)
+			return null;
+		latestFrame.retain();
+		return latestFrame;
+	}
+
+	/**
+	 * Copies a new depth image of the library into a free frame and makes it
+	 * the latest frame. Called by the implementations in updateDepthImage().
+	 * The libraries don't tell if they have a new image, so an image equal to
+	 * the latest frame is not published again and keeps its sequence
+	 * 
+	 * @param rawDepthData
+	 *            between 0 - 8000
+	 */
+	protected void publishDepthFrame(int[] rawDepthData) {
+
+		if (rawDepthData == null)
+			return;
+
+		// Only the caller of updateDepthImage() publishes, so the latest frame
+		// is still held by the Kinect while it is compared
+		DepthFrame frame;
+		synchronized (this) {
+			frame = latestFrame;
+		}
+		if (frame != null && frame.hasDepth(rawDepthData))
+			return;
+
+		synchronized (this) {
+			frame = freeFrames.poll();
+		}
+		if (frame == null)
+			frame = new DepthFrame(this, rawDepthData.length);
+
+		frame.fill(rawDepthData, frameSequence++);
+		// The reference of the Kinect
+		frame.retain();
+
+		DepthFrame oldFrame;
+		synchronized (this) {
+			oldFrame = latestFrame;
+			latestFrame = frame;
+		}
+		if (oldFrame != null)
+			oldFrame.release();
+	}
+
+	/**
+	 * Takes back a frame nobody holds anymore
+	 * 
+	 * @param frame
+	 */
+	synchronized void recycle(DepthFrame frame) {
+
+		freeFrames.push(frame);
+	}
 	
 	/**
 	 * Shut down Kinect
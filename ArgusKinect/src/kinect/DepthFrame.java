@@ -0,0 +1,112 @@
+package kinect;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One depth image of the Kinect. Frames are created and reused by
+ * {@link AbstractKinect}, so the depth data must never be changed by a reader.
+ * A reader calls {@link AbstractKinect#acquireDepthFrame()} and
+ * {@link #release()} when it is done, the frame is only reused after all
+ * readers released it.
+ *
+ * The depth is stored as short, which is enough for 0 - 8000 millimeters.
+ *
+ * @author Moritz Skowronski
+ *
+ */
+public class DepthFrame {
+
+	private AbstractKinect owner;
+
+	private short[] depthData;
+
+	// number of the frame, counted by the Kinect for every new depth image
+	private long sequence;
+	private long timestamp;
+
+	// number of readers and the Kinect itself holding the frame
+	private AtomicInteger references;
+
+	DepthFrame(AbstractKinect owner, int size) {
+
+		this.owner = owner;
+		depthData = new short[size];
+		references = new AtomicInteger();
+	}
+
+	/**
+	 * Fills the frame with a new depth image. Only called by the owner while
+	 * nobody holds the frame
+	 *
+	 * @param rawDepthData
+	 *            between 0 - 8000
+	 * @param sequence
+	 */
+	void fill(int[] rawDepthData, long sequence) {
+
+		for (int i = 0; i < depthData.length; i++) {
+			depthData[i] = (short) rawDepthData[i];
+		}
+		this.sequence = sequence;
+		timestamp = System.currentTimeMillis();
+	}
+
+	/**
+	 * Checks whether the frame holds the given depth image. The Kinect never
+	 * delivers two identical images because of the noise of the sensor, so
+	 * an equal image is one the library has already returned
+	 *
+	 * @param rawDepthData
+	 *            between 0 - 8000
+	 * @return true, if every pixel is equal
+	 */
+	boolean hasDepth(int[] rawDepthData) {
+
+		if (rawDepthData.length != depthData.length)
+			return false;
+		for (int i = 0; i < depthData.length; i++) {
+			if (depthData[i] != (short) rawDepthData[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Adds a reader
+	 */
+	void retain() {
+		references.incrementAndGet();
+	}
+
+	/**
+	 * Called by a reader when it doesn't need the frame anymore. The frame
+	 * must not be used afterwards
+	 */
+	public void release() {
+
+		int left = references.decrementAndGet();
+		if (left == 0)
+			owner.recycle(this);
+		else if (left < 0)
+			throw new IllegalStateException("Depth frame " + sequence + " released too often");
+	}
+
+	/*------------------Getter------------------*/
+
+	/**
+	 * Returns the depth of every pixel, must not be changed
+	 *
+	 * @return between 0 - 8000 millimeters, 512 * 424 pixels
+	 */
+	public short[] getDepthData() {
+		return depthData;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+}
@@ -32,7 +32,7 @@ public class KinectMac extends AbstractKinect {
 		kinect.initDevice();
 
 		colorImage = p.createImage(kinect.colorWidth, kinect.colorHeight, PApplet.RGB);
-		depthImage = p.createImage(kinect.depthWidth, kinect.depthHeight, PApplet.GRAY);
+		depthImage = p.createImage(kinect.depthWidth, kinect.depthHeight, PApplet.RGB);
 		bodyTrackImage = p.createImage(kinect.depthWidth, kinect.depthHeight, PApplet.RGB);
 		irImage = p.createImage(kinect.depthWidth, kinect.depthHeight, PApplet.RGB);
 	}
@@ -71,10 +71,14 @@ public class KinectMac extends AbstractKinect {
 		depthData = kinect.getRawDepth();
 		depthImage.loadPixels();
 		for (int i = 0; i < depthData.length; i++) {
-			depthImage.pixels[i] = (int)PApplet.map(depthData[i], 0, 8000, 0, 256);
+			// Built directly instead of using p.color(), which uses fields of
+			// the PGraphics and this runs on the capture thread
+			int grey = Math.min(255, (int) PApplet.map(depthData[i], 0, 8000, 0, 256));
+			depthImage.pixels[i] = 0xFF000000 | grey << 16 | grey << 8 | grey;
 		}
 		depthImage.updatePixels();
-		depthImage = kinect.getDepthImage();
+
+		publishDepthFrame(depthData);
 	}
 
 	@Override
@@ -94,6 +98,7 @@ public class KinectMac extends AbstractKinect {
 	}
 
 	@Override
+	@Deprecated
 	public int[] getRawDepthData() {
 		return depthData;
 	}
@@ -73,9 +73,14 @@ public class KinectWindows extends AbstractKinect{
 		depthData = kinect.getRawDepthData();
 		depthImage.loadPixels();
 		for (int i = 0; i < depthData.length; i++) {
-			depthImage.pixels[i] = p.color((int)PApplet.map(depthData[i], 0, 8000, 0, 256));
+			// Built directly instead of using p.color(), which uses fields of
+			// the PGraphics and this runs on the capture thread
+			int grey = Math.min(255, (int) PApplet.map(depthData[i], 0, 8000, 0, 256));
+			depthImage.pixels[i] = 0xFF000000 | grey << 16 | grey << 8 | grey;
 		}
 		depthImage.updatePixels();
+
+		publishDepthFrame(depthData);
 	}
 
 	@Override
@@ -89,6 +94,7 @@ public class KinectWindows extends AbstractKinect{
 	}
 
 	@Override
+	@Deprecated
 	public int[] getRawDepthData() {
 		return depthData;
 	}
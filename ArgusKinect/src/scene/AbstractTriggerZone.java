@@ -186,5 +186,42 @@ public abstract class AbstractTriggerZone {
 	 * @return
 	 */
 	public abstract Mat getRotationMatrix();
-	
+
+	/*--------------Containment--------------*/
+
+	/**
+	 * Precomputes everything needed by {@link #contains(float, float, float)}
+	 * and {@link #getBounds()}. Has to be called after the TriggerZone was
+	 * received or changed
+	 */
+	public abstract void compile();
+
+	/**
+	 * Tests whether a point in world space is inside the TriggerZone. Must not
+	 * allocate, it is called for every pixel of every person
+	 * 
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return
+	 */
+	public abstract boolean contains(float x, float y, float z);
+
+	/**
+	 * Returns the axis aligned bounding box of the TriggerZone in world space
+	 * 
+	 * @return minX, minY, minZ, maxX, maxY, maxZ
+	 */
+	public abstract float[] getBounds();
+
+	/**
+	 * Returns whether the TriggerZone is convex, so a region whose corners are
+	 * all inside is completely inside
+	 * 
+	 * @return
+	 */
+	public boolean isConvex() {
+		return true;
+	}
+
 }
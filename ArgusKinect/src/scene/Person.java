@@ -1,12 +1,11 @@
 package scene;
 
-import processing.core.PShape;
 import processing.core.PVector;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 
-import helpers.PersonMath;
+import helpers.KalmanFilter;
 import kinect.AbstractKinect;
 
 /**
@@ -41,16 +40,33 @@ public class Person {
 	private PVector center;
 	// Contour of a person, consists of many points
 	private ArrayList<PVector> contour;
-	// Smallest possible rectangle around Contour
-	private PShape boundingBox;
+	// Smallest possible rectangle around Contour: minX, minY, maxX, maxY
+	private float[] boundingBox;
 	// how many points of a specific triggerzone the person occupies
 	private HashMap<String, Integer> occupiesPointsPerTriggerzone;
+	// Estimates position and velocity, only used by tracked persons
+	private KalmanFilter filter;
+	// Time of the last prediction of the filter
+	private long lastPrediction;
+	// Position the person is expected at in the current frame
+	private PVector predictedCentroid;
+	// number of consecutive frames the person hasn't been detected
+	private int lostFrames;
+
+	/*--------------Filter Noise--------------*/
+	// x and y in pixels, z in millimeters, time in seconds
+	private static final float PROCESS_NOISE_XY = 2500;
+	private static final float PROCESS_NOISE_Z = 250000;
+	private static final float MEASUREMENT_NOISE_XY = 4;
+	private static final float MEASUREMENT_NOISE_Z = 900;
+	private static final float INITIAL_VELOCITY_VARIANCE_XY = 40000;
+	private static final float INITIAL_VELOCITY_VARIANCE_Z = 1000000;
 
 	public int color;
 
 	/*------------------Constructor------------------*/
 
-	public Person(PVector centroid, PVector center, ArrayList<PVector> contour, PShape boundingBox) {
+	public Person(PVector centroid, PVector center, ArrayList<PVector> contour, float[] boundingBox) {
 		id = next_id++;
 		starttime = System.currentTimeMillis();
 		age = 0;
@@ -60,6 +76,15 @@ public class Person {
 		this.boundingBox = boundingBox;
 		velocity = new PVector(0, 0, 0);
 		acceleration = new PVector(0, 0, 0);
+
+		filter = new KalmanFilter();
+		filter.setNoise(0, PROCESS_NOISE_XY, MEASUREMENT_NOISE_XY, INITIAL_VELOCITY_VARIANCE_XY);
+		filter.setNoise(1, PROCESS_NOISE_XY, MEASUREMENT_NOISE_XY, INITIAL_VELOCITY_VARIANCE_XY);
+		filter.setNoise(2, PROCESS_NOISE_Z, MEASUREMENT_NOISE_Z, INITIAL_VELOCITY_VARIANCE_Z);
+		filter.reset(centroid.x, centroid.y, centroid.z);
+		lastPrediction = starttime;
+		predictedCentroid = centroid.copy();
+
 		int r = (int) Math.random() * 256;
 		int g = (int) Math.random() * 256;
 		int b = (int) Math.random() * 256;
@@ -90,22 +115,61 @@ public class Person {
 	 * @param contour
 	 * @param boundingBox
 	 */
-	public void update(PVector centroid, PVector center, ArrayList<PVector> contour, PShape boundingBox) {
+	public void update(PVector centroid, PVector center, ArrayList<PVector> contour, float[] boundingBox) {
 		age++;
+		lostFrames = 0;
+		long now = System.currentTimeMillis();
 		long lasttime = timestamp;
-		timestamp = System.currentTimeMillis() - starttime;
+		timestamp = now - starttime;
 		long dt = timestamp - lasttime;
-		PVector dVec = PVector.sub(centroid, this.centroid);
-		PVector lastVelocity = velocity.copy();
-		velocity = PersonMath.calcVelocity(dVec, dt);
-		distance = (float) Math.sqrt(Math.pow(dVec.x, 2) + Math.pow(dVec.y, 2));
-		acceleration = PVector.sub(velocity, lastVelocity).div(dt);
+
+		// Temporary persons are not tracked, so they have no filter
+		if (filter != null) {
+			predict(now);
+			filter.correct(centroid.x, centroid.y, centroid.z);
+
+			// the filter works in seconds, velocity is given per millisecond
+			float lastX = velocity.x;
+			float lastY = velocity.y;
+			float lastZ = velocity.z;
+			velocity.set(filter.getVelocity(0) / 1000, filter.getVelocity(1) / 1000, filter.getVelocity(2) / 1000);
+			if (dt > 0)
+				acceleration.set((velocity.x - lastX) / dt, (velocity.y - lastY) / dt, (velocity.z - lastZ) / dt);
+		}
+
+		float dx = centroid.x - this.centroid.x;
+		float dy = centroid.y - this.centroid.y;
+		distance = (float) Math.sqrt(dx * dx + dy * dy);
 		this.centroid = centroid;
 		this.center = center;
 		this.contour = contour;
 		this.boundingBox = boundingBox;
 	}
 
+	/**
+	 * Moves the filter forward to the given time and updates the predicted
+	 * centroid. Calling it several times for the same frame is harmless.
+	 * 
+	 * @param time
+	 *            in milliseconds
+	 */
+	public void predict(long time) {
+
+		if (time > lastPrediction) {
+			filter.predict((time - lastPrediction) / 1000.0f);
+			lastPrediction = time;
+		}
+		predictedCentroid.set(filter.getPosition(0), filter.getPosition(1), filter.getPosition(2));
+	}
+
+	/**
+	 * Marks the person as not detected in the current frame. The person keeps
+	 * moving on its predicted path until it is detected again
+	 */
+	public void markLost() {
+		lostFrames++;
+	}
+
 	/**
 	 * Resets the id counter, only to be used if there are no persons in the map
 	 */
@@ -124,6 +188,34 @@ public class Person {
 		return centroid;
 	}
 
+	/**
+	 * Returns the position the person is expected at, see
+	 * {@link #predict(long)}
+	 * 
+	 * @return
+	 */
+	public PVector getPredictedCentroid() {
+		return predictedCentroid;
+	}
+
+	/**
+	 * Returns the number of consecutive frames the person hasn't been detected
+	 * 
+	 * @return 0 if the person was detected in the last frame
+	 */
+	public int getLostFrames() {
+		return lostFrames;
+	}
+
+	/**
+	 * Returns whether the person wasn't detected in the last frame
+	 * 
+	 * @return
+	 */
+	public boolean isLost() {
+		return lostFrames > 0;
+	}
+
 	/**
 	 * Returns the ID
 	 * 
@@ -172,9 +264,9 @@ public class Person {
 	/**
 	 * Returns the Bounding Box
 	 * 
-	 * @return
+	 * @return minX, minY, maxX, maxY
 	 */
-	public PShape getBoundingBox() {
+	public float[] getBoundingBox() {
 		return boundingBox;
 	}
 
@@ -0,0 +1,277 @@
+package scene;
+
+import java.util.Arrays;
+
+import helpers.Enum.AssignmentMode;
+
+/**
+ * Assigns the Persons of a new frame to the Persons of the last frame. All
+ * pairs that are close enough to be the same Person are added as candidates
+ * once, then they are either assigned greedily in order of their distance or
+ * optimally with the Hungarian method, which minimizes the sum of all
+ * distances and avoids id swaps in crowded scenes.
+ *
+ * @author Moritz Skowronski
+ *
+ */
+public class PersonAssignment {
+
+	// Cost of pairs that are no candidates
+	private static final double FORBIDDEN = 1e12;
+
+	private AssignmentMode mode;
+
+	private int newCount;
+	private int oldCount;
+
+	// Candidate pairs
+	private int candidateCount;
+	private int[] candidateNew;
+	private int[] candidateOld;
+	private float[] candidateDistance;
+
+	// distance in the upper, candidate index in the lower 32 bit, so a sort
+	// orders the candidates by distance
+	private long[] sortKeys;
+
+	private int[] matches;
+	private boolean[] assignedOld;
+
+	// Hungarian method
+	private double[] costs;
+	private double[] u;
+	private double[] v;
+	private double[] minv;
+	private int[] p;
+	private int[] way;
+	private boolean[] used;
+
+	public PersonAssignment() {
+
+		mode = AssignmentMode.GREEDY;
+		ensureCandidateCapacity(64);
+		matches = new int[0];
+		assignedOld = new boolean[0];
+	}
+
+	/**
+	 * Starts a new assignment
+	 *
+	 * @param newCount
+	 *            number of new Persons
+	 * @param oldCount
+	 *            number of old Persons
+	 */
+	public void clear(int newCount, int oldCount) {
+
+		this.newCount = newCount;
+		this.oldCount = oldCount;
+		candidateCount = 0;
+
+		if (matches.length < newCount)
+			matches = new int[newCount];
+		if (assignedOld.length < oldCount)
+			assignedOld = new boolean[oldCount];
+	}
+
+	/**
+	 * Adds a pair of a new and an old Person that could be the same Person
+	 *
+	 * @param newIndex
+	 * @param oldIndex
+	 * @param distance
+	 */
+	public void addCandidate(int newIndex, int oldIndex, float distance) {
+
+		ensureCandidateCapacity(candidateCount + 1);
+		candidateNew[candidateCount] = newIndex;
+		candidateOld[candidateCount] = oldIndex;
+		candidateDistance[candidateCount] = distance;
+		candidateCount++;
+	}
+
+	/**
+	 * Assigns the new Persons to the old Persons using the candidates
+	 *
+	 * @return for every new Person the index of the old Person, -1 if it is a
+	 *         new Person. Only the first newCount entries are valid
+	 */
+	public int[] solve() {
+
+		Arrays.fill(matches, 0, newCount, -1);
+		Arrays.fill(assignedOld, 0, oldCount, false);
+
+		if (candidateCount == 0)
+			return matches;
+
+		if (mode == AssignmentMode.HUNGARIAN)
+			solveHungarian();
+		else
+			solveGreedy();
+
+		return matches;
+	}
+
+	/**
+	 * Sorts the candidates once and assigns them in ascending order of their
+	 * distance
+	 */
+	private void solveGreedy() {
+
+		for (int i = 0; i < candidateCount; i++) {
+			// distances are positive, so their bits sort like the floats
+			sortKeys[i] = ((long) Float.floatToIntBits(candidateDistance[i]) << 32) | i;
+		}
+		Arrays.sort(sortKeys, 0, candidateCount);
+
+		for (int i = 0; i < candidateCount; i++) {
+
+			int candidate = (int) sortKeys[i];
+			int newIndex = candidateNew[candidate];
+			int oldIndex = candidateOld[candidate];
+
+			if (matches[newIndex] == -1 && !assignedOld[oldIndex]) {
+				matches[newIndex] = oldIndex;
+				assignedOld[oldIndex] = true;
+			}
+		}
+	}
+
+	/**
+	 * Solves the assignment with the Hungarian method on a square cost matrix.
+	 * Pairs that are no candidates get a forbidden cost and are dropped
+	 * afterwards
+	 */
+	private void solveHungarian() {
+
+		int n = Math.max(newCount, oldCount);
+		ensureMatrixCapacity(n);
+
+		// Padding rows and columns are free, real pairs are forbidden unless
+		// they are candidates
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				costs[i * n + j] = i < newCount && j < oldCount ? FORBIDDEN : 0;
+			}
+		}
+		for (int i = 0; i < candidateCount; i++) {
+			costs[candidateNew[i] * n + candidateOld[i]] = candidateDistance[i];
+		}
+
+		// 1-indexed potentials, column j is assigned to row p[j]
+		Arrays.fill(u, 0, n + 1, 0);
+		Arrays.fill(v, 0, n + 1, 0);
+		Arrays.fill(p, 0, n + 1, 0);
+		Arrays.fill(way, 0, n + 1, 0);
+
+		for (int i = 1; i <= n; i++) {
+
+			p[0] = i;
+			int j0 = 0;
+			Arrays.fill(minv, 0, n + 1, Double.MAX_VALUE);
+			Arrays.fill(used, 0, n + 1, false);
+
+			do {
+				used[j0] = true;
+				int i0 = p[j0];
+				double delta = Double.MAX_VALUE;
+				int j1 = 0;
+
+				for (int j = 1; j <= n; j++) {
+					if (used[j])
+						continue;
+					double current = costs[(i0 - 1) * n + (j - 1)] - u[i0] - v[j];
+					if (current < minv[j]) {
+						minv[j] = current;
+						way[j] = j0;
+					}
+					if (minv[j] < delta) {
+						delta = minv[j];
+						j1 = j;
+					}
+				}
+
+				for (int j = 0; j <= n; j++) {
+					if (used[j]) {
+						u[p[j]] += delta;
+						v[j] -= delta;
+					} else {
+						minv[j] -= delta;
+					}
+				}
+				j0 = j1;
+			} while (p[j0] != 0);
+
+			// Augment along the path
+			do {
+				int j1 = way[j0];
+				p[j0] = p[j1];
+				j0 = j1;
+			} while (j0 != 0);
+		}
+
+		for (int j = 1; j <= n; j++) {
+
+			int newIndex = p[j] - 1;
+			int oldIndex = j - 1;
+			if (newIndex < newCount && oldIndex < oldCount && costs[newIndex * n + oldIndex] < FORBIDDEN) {
+				matches[newIndex] = oldIndex;
+				assignedOld[oldIndex] = true;
+			}
+		}
+	}
+
+	/**
+	 * Grows the candidate arrays if necessary
+	 *
+	 * @param size
+	 */
+	private void ensureCandidateCapacity(int size) {
+
+		if (candidateNew != null && candidateNew.length >= size)
+			return;
+
+		int capacity = candidateNew == null ? size : Math.max(size, candidateNew.length * 2);
+		candidateNew = candidateNew == null ? new int[capacity] : Arrays.copyOf(candidateNew, capacity);
+		candidateOld = candidateOld == null ? new int[capacity] : Arrays.copyOf(candidateOld, capacity);
+		candidateDistance = candidateDistance == null ? new float[capacity]
+				: Arrays.copyOf(candidateDistance, capacity);
+		sortKeys = new long[capacity];
+	}
+
+	/**
+	 * Grows the arrays of the Hungarian method if necessary
+	 *
+	 * @param n
+	 *            size of the square matrix
+	 */
+	private void ensureMatrixCapacity(int n) {
+
+		if (u != null && u.length >= n + 1)
+			return;
+
+		costs = new double[n * n];
+		u = new double[n + 1];
+		v = new double[n + 1];
+		minv = new double[n + 1];
+		p = new int[n + 1];
+		way = new int[n + 1];
+		used = new boolean[n + 1];
+	}
+
+	/*------------Getter & Setter--------------*/
+
+	public AssignmentMode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Sets whether the candidates are assigned greedily or optimally
+	 *
+	 * @param mode
+	 */
+	public void setMode(AssignmentMode mode) {
+		this.mode = mode;
+	}
+
+}
@@ -1,23 +1,25 @@
 package scene;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import communication.UpdateListener;
 import gab.opencv.Contour;
+import helpers.Enum.AssignmentMode;
 import helpers.PersonMath;
 import helpers.ThreadingResult;
+import imageProcessing.ConnectedComponents;
+import imageProcessing.ScanlineFiller;
 import kinect.AbstractKinect;
 import processing.core.PApplet;
-import processing.core.PGraphics;
-import processing.core.PShape;
 import processing.core.PVector;
 import scene.TriggerBox;
 
@@ -39,20 +41,87 @@ public class PersonHandler {
 
 	private UpdateListener listener;
 
-	private PGraphics maskGraphic;
+	private ScanlineFiller scanlineFiller;
+
+	// Every pixel holds the label of the person it belongs to, 0 is background
+	private int[] labelBuffer;
 
 	// This is used to check whether a person is the same,
 	private float idRadius;
 
+	// How many frames a Person that isn't detected anymore is kept before it
+	// leaves, so short occlusions don't create a new Person
+	private int maxLostFrames;
+
+	// Assigns new Persons to the Persons of the last frame
+	private PersonAssignment assignment;
+
+	// Spatial hash over the centroids of the old Persons, so only Persons in
+	// neighbouring cells are compared
+	private SpatialGrid grid;
+	private float[] gridX;
+	private float[] gridY;
+	private float[] gridZ;
+	private int[] neighbours;
+
+	// Size of the square tiles the person masks are split into for analysis.
+	// Should be a multiple of the sampling stride, otherwise every tile starts
+	// its own sampling grid
+	private static final int TILE_SIZE = 64;
+
+	// Distance between two sampled pixels in x and y
+	private int samplingStride;
+	// Whether samples near the border of a triggerzone are refined
+	private boolean adaptiveSampling;
+
+	// Broad phase: only triggerzones whose bounds intersect the bounds of a
+	// tile are tested for its pixels. With many zones the bounds are searched
+	// with a BVH instead of testing all of them
+	private static final int BVH_THRESHOLD = 8;
+	// Used as depth range if the depth of a person is unknown
+	private static final int MAX_DEPTH = 8000;
+	private static final AbstractTriggerZone[] NO_ZONES = new AbstractTriggerZone[0];
+	// World bounds of all triggerzones, six floats per zone
+	private float[] zoneBounds;
+	private ZoneBVH zoneBVH;
+	private int[] zoneCandidates;
+	// Maps points to the zones they are in, if there are at most 64 zones
+	private ZoneVoxelGrid voxelGrid;
+
+	// Long-lived pool shared by all persons of all frames
+	private ExecutorService analysisService;
+
+	private int analysisThreads;
+
 	public PersonHandler(PApplet p, UpdateListener listener) {
 
+		this(p, listener, Runtime.getRuntime().availableProcessors());
+	}
+
+	public PersonHandler(PApplet p, UpdateListener listener, int analysisThreads) {
+
 		this.p = p;
 		this.listener = listener;
 
-		maskGraphic = p.createGraphics(AbstractKinect.DEPTH_WIDTH, AbstractKinect.DEPTH_HEIGHT, PApplet.P2D);
+		scanlineFiller = new ScanlineFiller(AbstractKinect.DEPTH_WIDTH, AbstractKinect.DEPTH_HEIGHT);
+		labelBuffer = new int[AbstractKinect.DEPTH_WIDTH * AbstractKinect.DEPTH_HEIGHT];
 		persons = new ArrayList<Person>();
 		triggerzones = new AbstractTriggerZone[0];
-		idRadius = 1000.0f;
+		idRadius = 500.0f;
+		maxLostFrames = 5;
+		samplingStride = 2;
+		adaptiveSampling = false;
+		assignment = new PersonAssignment();
+		grid = new SpatialGrid();
+		gridX = new float[16];
+		gridY = new float[16];
+		gridZ = new float[16];
+		neighbours = new int[16];
+		zoneBounds = new float[0];
+		zoneBVH = new ZoneBVH();
+		voxelGrid = new ZoneVoxelGrid();
+		zoneCandidates = new int[0];
+		setAnalysisThreads(analysisThreads);
 	}
 
 	/*---------------Main Methods---------------*/
@@ -64,7 +133,23 @@ public class PersonHandler {
 	 * @param contours
 	 *            List of OpenCV Contours
 	 */
-	public void analyzeContour(ArrayList<Contour> contours, int[] rawDepthData) {
+	public void analyzeContour(ArrayList<Contour> contours, short[] rawDepthData) {
+
+		analyzeContour(contours, null, rawDepthData);
+	}
+
+	/**
+	 * Analyzes all Contours provided in an ArrayList and creates Persons from
+	 * it. If the connected components of the silhouettes are given, persons
+	 * are built from the component statistics instead of filling the contours
+	 * 
+	 * @param contours
+	 *            List of OpenCV Contours
+	 * @param components
+	 *            the labelled silhouettes the contours were found in, can be
+	 *            null
+	 */
+	public void analyzeContour(ArrayList<Contour> contours, ConnectedComponents components, short[] rawDepthData) {
 		// Reset the Triggerzones, so that they are filled again
 		for (int i = 0; i < triggerzones.length; i++) {
 			triggerzones[i].clearPoints();
@@ -73,25 +158,43 @@ public class PersonHandler {
 		// Create an Arraylist that stores all updated Persons, so we don't
 		// update them twice
 		ArrayList<Person> tempPersons = new ArrayList<Person>();
-		for (Contour contour : contours) {
-
-			// Calculates all Person Infos, like Centroid, Bounding Box etc.
-			Person tempPerson;
-			try {
-				tempPerson = calculateAll(contour.getPoints(), rawDepthData);
-				tempPersons.add(tempPerson);
-			} catch (InterruptedException e) {
-				System.err.println("Error in multithreaded code @ People Analyzing");
-				e.printStackTrace();
-			} catch (ExecutionException e) {
-				System.err.println("Error in multithreaded code @ People Analyzing");
-				e.printStackTrace();
-			}
-
+		try {
+			tempPersons = calculateAll(contours, components, rawDepthData);
+		} catch (InterruptedException e) {
+			System.err.println("Error in multithreaded code @ People Analyzing");
+			e.printStackTrace();
+		} catch (ExecutionException e) {
+			System.err.println("Error in multithreaded code @ People Analyzing");
+			e.printStackTrace();
 		}
 		updatePersons(tempPersons);
 	}
 
+	/**
+	 * Sorts the predicted centroids of all old Persons into the spatial grid. The cell
+	 * size is the idRadius, so all candidates of a new Person are in the 27
+	 * cells around it
+	 */
+	private void buildGrid() {
+
+		int count = persons.size();
+		if (gridX.length < count) {
+			int capacity = Math.max(count, gridX.length * 2);
+			gridX = new float[capacity];
+			gridY = new float[capacity];
+			gridZ = new float[capacity];
+			neighbours = new int[capacity];
+		}
+
+		for (int j = 0; j < count; j++) {
+			PVector centroid = persons.get(j).getPredictedCentroid();
+			gridX[j] = centroid.x;
+			gridY[j] = centroid.y;
+			gridZ[j] = centroid.z;
+		}
+		grid.build(gridX, gridY, gridZ, count, Math.max(idRadius, 1));
+	}
+
 	/**
 	 * Updates the existing persons with new Persons (performs the tracking)
 	 * 
@@ -100,243 +203,372 @@ public class PersonHandler {
 	 */
 	private void updatePersons(ArrayList<Person> tempPersons) {
 
-		// Create a distance Matrix
-		float[][] distanceMatrix = new float[tempPersons.size()][persons.size()];
-
-		// Fill the distance Matrix with the distances between Centroids
-		for (int i = 0; i < distanceMatrix.length; i++) {
-			for (int j = 0; j < distanceMatrix[i].length; j++) {
-				distanceMatrix[i][j] = PVector.dist(tempPersons.get(i).getCentroid(), persons.get(j).getCentroid());
-			}
+		// Collect all pairs that are close enough to be the same Person once
+		// Match against the positions the persons are expected at
+		long now = System.currentTimeMillis();
+		for (int j = 0; j < persons.size(); j++) {
+			persons.get(j).predict(now);
 		}
 
-		// We have to process all new Contours and either update existing
-		// Persons or add new ones
-		int oldPersonsToProcess = persons.size();
-		int newPersonsToProcess = tempPersons.size();
-		boolean[] processedNewPersons = new boolean[newPersonsToProcess];
-		boolean[] processedOldPersons = new boolean[oldPersonsToProcess];
-
-		float temporaryMinimum = Float.MAX_VALUE;
-
-		// This can be done, because of the temporary Minimum < idRadius check.
-		// Could lead to NullPointer
-		// Exceptions or false positives, if temporaryMinimum wouldn't be Max
-		// Value
-		int oldPersonID = 0;
-		int newPersonID = 0;
-
-		/**
-		 * TODO k�nnte ich nicht am anfang einmal die doppelte for durchlaufen
-		 * und dann sortiert die werte abspeichern, die unter dem threshold
-		 * liegen?!
-		 */
-
-		while (oldPersonsToProcess > 0) {
-
-			temporaryMinimum = Float.MAX_VALUE;
-
-			for (int i = 0; i < distanceMatrix.length; i++) {
+		assignment.clear(tempPersons.size(), persons.size());
+		buildGrid();
+		for (int i = 0; i < tempPersons.size(); i++) {
 
-				if (processedNewPersons[i])
-					continue;
-
-				for (int j = 0; j < distanceMatrix[i].length; j++) {
-
-					if (processedOldPersons[j])
-						continue;
-
-					if (distanceMatrix[i][j] < temporaryMinimum) {
-
-						// if we found a minimum, save the distance as well
-						// as
-						// the current ids
-						temporaryMinimum = distanceMatrix[i][j];
-						oldPersonID = j;
-						newPersonID = i;
-					}
+			PVector centroid = tempPersons.get(i).getCentroid();
+			int found = grid.query(centroid.x, centroid.y, centroid.z, neighbours);
+			for (int k = 0; k < found; k++) {
 
+				int j = neighbours[k];
+				float distance = PVector.dist(centroid, persons.get(j).getPredictedCentroid());
+				if (Math.ceil(distance) <= idRadius) {
+					assignment.addCandidate(i, j, distance);
 				}
 			}
+		}
 
-			// If the minimum is below the threshold it's an update of an old
-			// Person
-			if (Math.ceil(temporaryMinimum) <= idRadius) {
+		// For every new Person the index of the old Person or -1
+		int[] matches = assignment.solve();
+		boolean[] processedOldPersons = new boolean[persons.size()];
 
-				processedOldPersons[oldPersonID] = true;
-				processedNewPersons[newPersonID] = true;
+		// Update all old Persons that have been found again
+		for (int i = 0; i < tempPersons.size(); i++) {
 
-				newPersonsToProcess--;
+			int oldPersonID = matches[i];
+			if (oldPersonID < 0)
+				continue;
 
-				Person tempPerson = tempPersons.get(newPersonID);
-				persons.get(oldPersonID).update(tempPerson.getCentroid(), tempPerson.getCenter(),
-						tempPerson.getContour(), tempPerson.getBoundingBox());
-				for (int i = 0; i < triggerzones.length; i++) {
-					if (tempPerson.getOccupiesPointsPerTriggerzone().containsKey(triggerzones[i].getID())) {
-						// Add the Points with the correct ID to the Triggerzone
-						triggerzones[i].addToPointsPerPerson(persons.get(oldPersonID).getId(),
-								tempPerson.getOccupiesPointsPerTriggerzone().get(triggerzones[i].getID()));
-					}
+			processedOldPersons[oldPersonID] = true;
+
+			Person tempPerson = tempPersons.get(i);
+			persons.get(oldPersonID).update(tempPerson.getCentroid(), tempPerson.getCenter(), tempPerson.getContour(),
+					tempPerson.getBoundingBox());
+			for (int j = 0; j < triggerzones.length; j++) {
+				if (tempPerson.getOccupiesPointsPerTriggerzone().containsKey(triggerzones[j].getID())) {
+					// Add the Points with the correct ID to the Triggerzone
+					triggerzones[j].addToPointsPerPerson(persons.get(oldPersonID).getId(),
+							tempPerson.getOccupiesPointsPerTriggerzone().get(triggerzones[j].getID()));
 				}
-				personMoved(persons.get(oldPersonID));
-			} else {
-				// Because there won't be anything smaller we are done
-				break;
 			}
-
-			oldPersonsToProcess--;
+			personMoved(persons.get(oldPersonID));
 		}
 
-		// now delete old not updated Persons
-		// if there are not updated old Persons
-		if (oldPersonsToProcess > 0) {
-			// run backwards, so the indexes stay the same
-			for (int i = processedOldPersons.length - 1; i >= 0; i--) {
+		// Old Persons that haven't been found coast on their prediction and can
+		// still be found again, they are only deleted when they are lost too
+		// long. Run backwards, so the indexes stay the same
+		for (int i = processedOldPersons.length - 1; i >= 0; i--) {
+
+			// if person hasn't been processed
+			if (!processedOldPersons[i]) {
 
-				// if person hasn't been processed
-				if (!processedOldPersons[i]) {
+				Person person = persons.get(i);
+				if (person.getLostFrames() < maxLostFrames) {
+					person.markLost();
+				} else {
 					// delete
-					personLeft(persons.get(i).getId());
+					personLeft(person.getId());
 					persons.remove(i);
 				}
 			}
 		}
 
 		// add new unprocessed Persons
+		for (int i = 0; i < tempPersons.size(); i++) {
 
-		if (newPersonsToProcess > 0) {
-
-			for (int i = 0; i < processedNewPersons.length; i++) {
-
-				if (!processedNewPersons[i]) {
+			if (matches[i] >= 0)
+				continue;
 
-					// Add new Person
+			// Add new Person
+			Person tempPerson = tempPersons.get(i);
 
-					Person tempPerson = tempPersons.get(i);
+			Person person = new Person(tempPerson.getCentroid(), tempPerson.getCenter(), tempPerson.getContour(),
+					tempPerson.getBoundingBox());
 
-					Person person = new Person(tempPerson.getCentroid(), tempPerson.getCenter(),
-							tempPerson.getContour(), tempPerson.getBoundingBox());
-
-					for (int j = 0; j < triggerzones.length; j++) {
-
-						if (tempPerson.getOccupiesPointsPerTriggerzone().containsKey(triggerzones[j].getID())) {
-
-							// Add the Points with the correct ID to the
-							// Triggerzone
-							triggerzones[j].addToPointsPerPerson(person.getId(),
-									tempPerson.getOccupiesPointsPerTriggerzone().get(triggerzones[j].getID()));
-						}
-					}
+			for (int j = 0; j < triggerzones.length; j++) {
 
-					personEntered(person);
+				if (tempPerson.getOccupiesPointsPerTriggerzone().containsKey(triggerzones[j].getID())) {
 
-					persons.add(person);
+					// Add the Points with the correct ID to the
+					// Triggerzone
+					triggerzones[j].addToPointsPerPerson(person.getId(),
+							tempPerson.getOccupiesPointsPerTriggerzone().get(triggerzones[j].getID()));
 				}
 			}
+
+			personEntered(person);
+
+			persons.add(person);
 		}
 
 		updateTriggerzones();
 	}
 
 	/**
-	 * Calculates all relevant person Infos
+	 * Calculates all relevant person Infos for all contours of a frame. If a
+	 * contour belongs to a connected component, centroid and bounding box are
+	 * taken from the component statistics and the pixels are only visited to
+	 * test the triggerzones. Otherwise the contour is filled into the label
+	 * buffer. The bounding boxes of all persons are split into tiles which are
+	 * analyzed by the shared analysis pool.
 	 * 
-	 * @param contour
-	 *            the contour of a person
-	 * @param triggerzone
-	 *            the triggerzones for which to check whether a person is inside
-	 * @return
+	 * @param contours
+	 *            the contours of all persons
+	 * @param components
+	 *            the labelled silhouettes, can be null
+	 * @param rawDepthData
+	 *            the depth data of the frame
+	 * @return one temporary Person per contour
 	 * @throws ExecutionException
 	 * @throws InterruptedException
 	 */
-	public Person calculateAll(ArrayList<PVector> contour, int[] rawDepthData)
-			throws InterruptedException, ExecutionException {
+	public ArrayList<Person> calculateAll(ArrayList<Contour> contours, ConnectedComponents components,
+			short[] rawDepthData) throws InterruptedException, ExecutionException {
 
-		// Construct a maskimage as background buffer
-		maskGraphic.beginDraw();
-		maskGraphic.clear();
-		maskGraphic.fill(255);
-		maskGraphic.beginShape();
+		Arrays.fill(labelBuffer, 0);
 
-		for (int i = 0; i < contour.size(); i += 4) {
-			maskGraphic.vertex(contour.get(i).x, contour.get(i).y);
-		}
-		maskGraphic.vertex(contour.get(0).x, contour.get(0).y);
-		maskGraphic.endShape();
-		maskGraphic.endDraw();
+		int personCount = contours.size();
+		ArrayList<Person> tempPersons = new ArrayList<Person>(personCount);
+		float[][] boundingBoxes = new float[personCount][];
+		PVector[] centroids = new PVector[personCount];
+		int[] centroidCounters = new int[personCount];
 
-		Person person = new Person();
+		// The tasks and the person every task belongs to
+		List<ThreadingResult> tiles = new ArrayList<ThreadingResult>();
+		List<Integer> tileOwners = new ArrayList<Integer>();
 
-		// Calculate Bounding Box
-		PShape boundingBox = PersonMath.getBoundingBox(p, contour);
+		// A component must not be used twice, e.g. by the contour of a hole
+		boolean[] usedComponents = new boolean[components != null ? components.getCount() + 1 : 0];
 
-		PVector centroid = new PVector();
+		for (int i = 0; i < personCount; i++) {
 
-		// counts the number of pixel of the person
-		int centroidCounter = 0;
+			ArrayList<PVector> contour = contours.get(i).getPoints();
+			tempPersons.add(new Person());
 
-		/**
-		 * Multithread this operation as this is very expensive Divide the
-		 * buffer into parts (depending on how many processors we have) and
-		 * analyze the image seperately
-		 */
-		int threads = Runtime.getRuntime().availableProcessors();
-		ExecutorService service = Executors.newFixedThreadPool(threads);
-		List<Future<ThreadingResult>> futures = new ArrayList<Future<ThreadingResult>>();
+			int component = 0;
+			if (components != null && !contour.isEmpty()) {
+				// The contour runs along the border of its component
+				component = components.getLabel((int) contour.get(0).x, (int) contour.get(0).y);
+				if (usedComponents[component])
+					component = 0;
+				usedComponents[component] = true;
+			}
 
-		// Divide
-		int xstart = (int) boundingBox.getParam(0);
-		int xend = (int) boundingBox.getParam(2) + 1;
-		int ystart = (int) boundingBox.getParam(1);
+			int[] labels;
+			int label;
+			int minDepth;
+			int maxDepth;
+			if (component != 0) {
+
+				boundingBoxes[i] = new float[] { components.getMinX(component), components.getMinY(component),
+						components.getMaxX(component), components.getMaxY(component) };
+				centroids[i] = new PVector(components.getCentroidX(component), components.getCentroidY(component),
+						components.getAverageDepth(component));
+				centroidCounters[i] = -1;
+
+				labels = components.getLabels();
+				label = component;
+				minDepth = components.getMinDepth(component);
+				maxDepth = components.getMaxDepth(component);
+
+				// Nothing else to do if the person can't touch a triggerzone
+				if (minDepth == 0 || findZoneCandidates(components.getMinX(component),
+						components.getMaxX(component) + 1, components.getMinY(component),
+						components.getMaxY(component) + 1, minDepth, maxDepth) == 0)
+					continue;
+			} else {
 
-		maskGraphic.loadPixels();
-		int ystep = (int) (boundingBox.getParam(3) - ystart) / threads;
+				// Calculate Bounding Box
+				boundingBoxes[i] = PersonMath.getBoundingBox(contour);
+				centroids[i] = new PVector();
 
-		int yend = (int) ystart + ystep;
+				labels = labelBuffer;
+				label = i + 1;
+				minDepth = 1;
+				maxDepth = MAX_DEPTH;
 
-		// Start threads
-		for (int i = 0; i < threads; i++) {
-			if (i == threads - 1)
-				yend = (int) boundingBox.getParam(3) + 1;
-			Callable<ThreadingResult> callable = new ThreadingResult(triggerzones, rawDepthData, maskGraphic, p, xstart,
-					xend, ystart, yend);
+				// Fill the silhouette into the label buffer
+				scanlineFiller.fill(contour, 4, labelBuffer, label);
+			}
 
-			futures.add(service.submit(callable));
+			int xstart = (int) boundingBoxes[i][0];
+			int xend = (int) boundingBoxes[i][2] + 1;
+			int ystart = (int) boundingBoxes[i][1];
+			int yend = (int) boundingBoxes[i][3] + 1;
 
-			ystart += ystep;
-			yend += ystep;
-		}
+			// Split the bounding box into tiles, every tile only tests the
+			// triggerzones it can touch
+			for (int y = ystart; y < yend; y += TILE_SIZE) {
+				for (int x = xstart; x < xend; x += TILE_SIZE) {
 
-		service.shutdown();
+					int tileXend = Math.min(x + TILE_SIZE, xend);
+					int tileYend = Math.min(y + TILE_SIZE, yend);
+					int found = findZoneCandidates(x, tileXend, y, tileYend, minDepth, maxDepth);
 
-		// then combine all the results
-		List<ThreadingResult> results = new ArrayList<ThreadingResult>();
-		for (Future<ThreadingResult> threadingResult : futures) {
-			results.add(threadingResult.get());
+					// Tiles of components are only needed for the triggerzones
+					if (component != 0 && found == 0)
+						continue;
+
+					ThreadingResult tile;
+					if (voxelGrid.isEnabled()) {
+						long zoneMask = 0;
+						for (int j = 0; j < found; j++) {
+							zoneMask |= 1L << zoneCandidates[j];
+						}
+						tile = new ThreadingResult(triggerzones, voxelGrid, zoneMask, rawDepthData, labels, label, x,
+								tileXend, y, tileYend);
+					} else {
+						AbstractTriggerZone[] tileZones = NO_ZONES;
+						if (found > 0) {
+							tileZones = new AbstractTriggerZone[found];
+							for (int j = 0; j < found; j++) {
+								tileZones[j] = triggerzones[zoneCandidates[j]];
+							}
+						}
+						tile = new ThreadingResult(tileZones, rawDepthData, labels, label, x, tileXend, y, tileYend);
+					}
+					tile.setSampling(samplingStride, adaptiveSampling);
+					tiles.add(tile);
+					tileOwners.add(i);
+				}
+			}
 		}
 
-		for (ThreadingResult threadingResult : results) {
-			centroid.add(threadingResult.centroid);
-			centroidCounter += threadingResult.centroidCounter;
+		// then combine all the results
+		List<Future<ThreadingResult>> futures = analysisService.invokeAll(tiles);
+		for (int i = 0; i < futures.size(); i++) {
+
+			ThreadingResult threadingResult = futures.get(i).get();
+			int index = tileOwners.get(i);
+
+			// Centroids of components are already known
+			if (centroidCounters[index] >= 0) {
+				centroids[index].add(threadingResult.centroid);
+				centroidCounters[index] += threadingResult.centroidCounter;
+			}
 
 			Iterator<Map.Entry<String, Integer>> triggerIterator = threadingResult.triggerPoints.entrySet().iterator();
 			while (triggerIterator.hasNext()) {
 
 				Map.Entry<String, Integer> entry = triggerIterator.next();
 
-				person.addToPointsPerPerson(entry.getKey(), entry.getValue());
+				tempPersons.get(index).addToPointsPerPerson(entry.getKey(), entry.getValue());
+			}
+		}
+
+		for (int i = 0; i < personCount; i++) {
+
+			float[] boundingBox = boundingBoxes[i];
+
+			// Divide by all pixels so we get an average result
+			if (centroidCounters[i] >= 0)
+				centroids[i].div(centroidCounters[i]);
+
+			// calculates the center
+			PVector center = new PVector(
+					boundingBox[0] + (boundingBox[2] - boundingBox[0]) / 2,
+					boundingBox[1] + (boundingBox[3] - boundingBox[1]) / 2);
+			// Done
+			tempPersons.get(i).update(centroids[i], center, contours.get(i).getPoints(), boundingBox);
+		}
+
+		return tempPersons;
+	}
+
+	/**
+	 * Finds all triggerzones that can contain a point of a region of the depth
+	 * image. The region is turned into a bounding box in world space using the
+	 * depth range, which is then tested against the bounds of the zones
+	 * 
+	 * @param xstart
+	 * @param xend
+	 *            exclusive
+	 * @param ystart
+	 * @param yend
+	 *            exclusive
+	 * @param minDepth
+	 *            smallest depth in the region
+	 * @param maxDepth
+	 *            biggest depth in the region
+	 * @return the number of zones found, their indices are stored in
+	 *         zoneCandidates in ascending order
+	 */
+	private int findZoneCandidates(int xstart, int xend, int ystart, int yend, int minDepth, int maxDepth) {
+
+		// Zones haven't been initialized yet, all of them have to be tested
+		if (zoneBounds.length != triggerzones.length * 6) {
+			if (zoneCandidates.length < triggerzones.length)
+				zoneCandidates = new int[triggerzones.length];
+			for (int i = 0; i < triggerzones.length; i++) {
+				zoneCandidates[i] = i;
 			}
+			return triggerzones.length;
 		}
-		// Divide by all pixels so we get an average result
-		centroid.div(centroidCounter);
 
-		// calculates the center
-		PVector center = new PVector(boundingBox.getParam(0) + (boundingBox.getParam(2) - boundingBox.getParam(0)) / 2,
-				boundingBox.getParam(1) + (boundingBox.getParam(3) - boundingBox.getParam(1)) / 2);
-		// Done
-		person.update(centroid, center, contour, boundingBox);
+		if (triggerzones.length == 0)
+			return 0;
+
+		// The ray factors are monotonic, so their extremes lie on the border
+		// of the region
+		float minRayX = Float.MAX_VALUE, maxRayX = -Float.MAX_VALUE;
+		float minRayY = Float.MAX_VALUE, maxRayY = -Float.MAX_VALUE;
+		for (int x = xstart; x < xend; x++) {
+			for (int y = ystart; y < yend; y += Math.max(1, yend - ystart - 1)) {
+				int offset = y * AbstractKinect.DEPTH_WIDTH + x;
+				minRayX = Math.min(minRayX, PersonMath.rayX(offset));
+				maxRayX = Math.max(maxRayX, PersonMath.rayX(offset));
+				minRayY = Math.min(minRayY, PersonMath.rayY(offset));
+				maxRayY = Math.max(maxRayY, PersonMath.rayY(offset));
+			}
+		}
+		for (int y = ystart; y < yend; y++) {
+			for (int x = xstart; x < xend; x += Math.max(1, xend - xstart - 1)) {
+				int offset = y * AbstractKinect.DEPTH_WIDTH + x;
+				minRayX = Math.min(minRayX, PersonMath.rayX(offset));
+				maxRayX = Math.max(maxRayX, PersonMath.rayX(offset));
+				minRayY = Math.min(minRayY, PersonMath.rayY(offset));
+				maxRayY = Math.max(maxRayY, PersonMath.rayY(offset));
+			}
+		}
 
-		return person;
+		float minX = Math.min(minRayX * minDepth, minRayX * maxDepth);
+		float maxX = Math.max(maxRayX * minDepth, maxRayX * maxDepth);
+		float minY = Math.min(minRayY * minDepth, minRayY * maxDepth);
+		float maxY = Math.max(maxRayY * minDepth, maxRayY * maxDepth);
+
+		int found;
+		if (triggerzones.length > BVH_THRESHOLD) {
+			found = zoneBVH.query(minX, minY, minDepth, maxX, maxY, maxDepth, zoneCandidates);
+			Arrays.sort(zoneCandidates, 0, found);
+		} else {
+			found = 0;
+			for (int i = 0; i < triggerzones.length; i++) {
+				int offset = i * 6;
+				if (zoneBounds[offset] <= maxX && zoneBounds[offset + 3] >= minX && zoneBounds[offset + 1] <= maxY
+						&& zoneBounds[offset + 4] >= minY && zoneBounds[offset + 2] <= maxDepth
+						&& zoneBounds[offset + 5] >= minDepth)
+					zoneCandidates[found++] = i;
+			}
+		}
+
+		return found;
+	}
+
+	/**
+	 * Collects the world bounds of all triggerzones for the broad phase
+	 */
+	private void updateZoneBounds() {
+
+		zoneBounds = new float[triggerzones.length * 6];
+		zoneCandidates = new int[triggerzones.length];
+
+		for (int i = 0; i < triggerzones.length; i++) {
+
+			System.arraycopy(triggerzones[i].getBounds(), 0, zoneBounds, i * 6, 6);
+		}
+
+		if (triggerzones.length > BVH_THRESHOLD)
+			zoneBVH.build(zoneBounds, triggerzones.length);
+
+		voxelGrid.build(triggerzones, zoneBounds);
 	}
 
 	/*------------------Setter------------------*/
@@ -349,19 +581,125 @@ public class PersonHandler {
 	public void setTriggerZones(AbstractTriggerZone[] triggerzones) {
 
 		this.triggerzones = triggerzones;
+
+		// The broad phase and the voxel grid are rebuilt once the zones are
+		// initialized
+		zoneBounds = new float[0];
+		voxelGrid.clear();
 	}
 
-	public void initializeTriggerZones() {
+	/**
+	 * Sets whether new Persons are assigned greedily by distance or optimally
+	 * with the Hungarian method
+	 * 
+	 * @param mode
+	 */
+	public void setAssignmentMode(AssignmentMode mode) {
 
-		for (int i = 0; i < triggerzones.length; i++) {
-			if (triggerzones[i].getClass() == TriggerBox.class) {
+		assignment.setMode(mode);
+	}
+
+	/**
+	 * Sets the maximum distance between two centroids of the same Person in
+	 * consecutive frames
+	 * 
+	 * @param idRadius
+	 */
+	public void setIdRadius(float idRadius) {
+
+		this.idRadius = idRadius;
+	}
 
-				TriggerBox box = (TriggerBox) triggerzones[i];
-				box.calculateEdges();
-				box.calculateNormalizedNormals();
+	/**
+	 * Sets the distance between two sampled pixels in x and y. Every sample
+	 * stands for stride * stride pixels of the triggerzones
+	 * 
+	 * @param samplingStride
+	 */
+	public void setSamplingStride(int samplingStride) {
+
+		this.samplingStride = Math.max(1, samplingStride);
+	}
+
+	/**
+	 * Sets whether samples near the border of a triggerzone are refined to
+	 * full resolution, so a big stride can be used without losing accuracy at
+	 * the borders
+	 * 
+	 * @param adaptiveSampling
+	 */
+	public void setAdaptiveSampling(boolean adaptiveSampling) {
+
+		this.adaptiveSampling = adaptiveSampling;
+	}
+
+	/**
+	 * Sets how many frames a Person that isn't detected anymore is kept before
+	 * it leaves. 0 deletes Persons as soon as they aren't detected
+	 * 
+	 * @param maxLostFrames
+	 */
+	public void setMaxLostFrames(int maxLostFrames) {
+
+		this.maxLostFrames = Math.max(0, maxLostFrames);
+	}
+
+	/**
+	 * Returns how many frames a Person that isn't detected anymore is kept
+	 * 
+	 * @return
+	 */
+	public int getMaxLostFrames() {
+		return maxLostFrames;
+	}
+
+	/**
+	 * Sets the number of threads used for analyzing the persons. Replaces the
+	 * current analysis pool
+	 * 
+	 * @param analysisThreads
+	 */
+	public void setAnalysisThreads(int analysisThreads) {
+
+		if (analysisService != null) {
+			analysisService.shutdown();
+		}
+		this.analysisThreads = Math.max(1, analysisThreads);
+		analysisService = Executors.newFixedThreadPool(this.analysisThreads, new ThreadFactory() {
+
+			private int counter = 0;
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "PersonAnalysis-" + counter++);
+				thread.setDaemon(true);
+				return thread;
 			}
+		});
+	}
+
+	/**
+	 * Returns the number of threads used for analyzing the persons
+	 * 
+	 * @return
+	 */
+	public int getAnalysisThreads() {
+		return analysisThreads;
+	}
+
+	/**
+	 * Shuts down the analysis pool
+	 */
+	public void shutdown() {
+		analysisService.shutdown();
+	}
 
+	public void initializeTriggerZones() {
+
+		for (int i = 0; i < triggerzones.length; i++) {
+			triggerzones[i].compile();
 		}
+		updateZoneBounds();
 	}
 
 	/*--------------Notifications-------------*/
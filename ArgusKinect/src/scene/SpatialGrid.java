@@ -0,0 +1,149 @@
+package scene;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over 3D points, stored as a spatial hash. With a cell size
+ * equal to the search radius, all points within the radius of a position lie
+ * in the 27 cells around it, so only these have to be compared instead of all
+ * points.
+ *
+ * @author Moritz Skowronski
+ *
+ */
+public class SpatialGrid {
+
+	private static final int EMPTY = -1;
+
+	private float cellSize;
+
+	// Open addressing hash table from cell key to the first point in the cell
+	private long[] tableKeys;
+	private int[] tableHeads;
+	private int tableMask;
+
+	// Linked list of all points in the same cell
+	private int[] next;
+
+	public SpatialGrid() {
+
+		resizeTable(64);
+		next = new int[16];
+	}
+
+	/**
+	 * Sorts all points into the grid
+	 *
+	 * @param xs
+	 * @param ys
+	 * @param zs
+	 * @param count
+	 *            number of points
+	 * @param cellSize
+	 *            edge length of a cell, should be the search radius
+	 */
+	public void build(float[] xs, float[] ys, float[] zs, int count, float cellSize) {
+
+		this.cellSize = cellSize;
+
+		// keep the load factor below 0.5
+		if (tableKeys.length < count * 2)
+			resizeTable(Integer.highestOneBit(count * 2) << 1);
+		else
+			Arrays.fill(tableHeads, EMPTY);
+
+		if (next.length < count)
+			next = new int[count];
+
+		for (int i = 0; i < count; i++) {
+
+			long key = key(cell(xs[i]), cell(ys[i]), cell(zs[i]));
+			int slot = slot(key);
+			next[i] = tableHeads[slot];
+			tableKeys[slot] = key;
+			tableHeads[slot] = i;
+		}
+	}
+
+	/**
+	 * Finds all points in the cell of the position and its neighbouring cells.
+	 * These are all points that can be within the cell size of the position
+	 *
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @param result
+	 *            is filled with the indices of the points, has to be as big as
+	 *            the number of points
+	 * @return number of points found
+	 */
+	public int query(float x, float y, float z, int[] result) {
+
+		int cellX = cell(x);
+		int cellY = cell(y);
+		int cellZ = cell(z);
+		int found = 0;
+
+		for (int dx = -1; dx <= 1; dx++) {
+			for (int dy = -1; dy <= 1; dy++) {
+				for (int dz = -1; dz <= 1; dz++) {
+
+					int slot = slot(key(cellX + dx, cellY + dy, cellZ + dz));
+					for (int i = tableHeads[slot]; i != EMPTY; i = next[i]) {
+						result[found++] = i;
+					}
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the cell coordinate of a position
+	 *
+	 * @param value
+	 * @return
+	 */
+	private int cell(float value) {
+		return (int) Math.floor(value / cellSize);
+	}
+
+	/**
+	 * Packs the cell coordinates into one key, 21 bit per axis
+	 *
+	 * @return
+	 */
+	private static long key(int cellX, int cellY, int cellZ) {
+		return ((long) (cellX & 0x1FFFFF) << 42) | ((long) (cellY & 0x1FFFFF) << 21) | (cellZ & 0x1FFFFF);
+	}
+
+	/**
+	 * Returns the slot of a key in the hash table. Empty slots and slots with
+	 * the key are returned, so the slot can be read or written
+	 *
+	 * @param key
+	 * @return
+	 */
+	private int slot(long key) {
+
+		int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & tableMask;
+		while (tableHeads[slot] != EMPTY && tableKeys[slot] != key) {
+			slot = (slot + 1) & tableMask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Creates an empty hash table
+	 *
+	 * @param size
+	 *            power of two
+	 */
+	private void resizeTable(int size) {
+
+		tableKeys = new long[size];
+		tableHeads = new int[size];
+		tableMask = size - 1;
+		Arrays.fill(tableHeads, EMPTY);
+	}
+}
@@ -39,6 +39,22 @@ public class TriggerBox extends AbstractTriggerZone implements Serializable {
 
 	private Vec[] normals;
 
+	/*--------------Compiled Box--------------*/
+	// Only needed for the containment test, so they are not sent between
+	// Control and Kinect, call compile() after receiving the box
+
+	// center of the box
+	private transient float centerX, centerY, centerZ;
+	// rows of the inverse rotation (the axes of the box in world space)
+	private transient float axisXx, axisXy, axisXz;
+	private transient float axisYx, axisYy, axisYz;
+	private transient float axisZx, axisZy, axisZz;
+	// half of the size of the box
+	private transient float halfX, halfY, halfZ;
+	// axis aligned bounding box in world space: minX, minY, minZ, maxX, maxY,
+	// maxZ
+	private transient float[] bounds;
+
 	// amount of PersonPoints in the Box
 	private int depthPointsInBox;
 	// <PersonID, Points of that Person>
@@ -267,6 +283,88 @@ public class TriggerBox extends AbstractTriggerZone implements Serializable {
 		}
 	}
 
+	/**
+	 * Stores the inverse rigid transform and the half sizes of the box as
+	 * floats, so {@link #contains(float, float, float)} doesn't need any
+	 * objects. Has to be called again after the box changed
+	 */
+	@Override
+	public void compile() {
+
+		calculateEdges();
+		calculateNormalizedNormals();
+
+		centerX = x;
+		centerY = y;
+		centerZ = z;
+
+		// The columns of the rotation are the axes of the box, the inverse
+		// rotation is its transpose, so they become its rows
+		Mat rotation = getRotationMatrix();
+		Vec axis = rotation.multiply(new Vec(1, 0, 0));
+		axisXx = axis.x();
+		axisXy = axis.y();
+		axisXz = axis.z();
+		axis = rotation.multiply(new Vec(0, 1, 0));
+		axisYx = axis.x();
+		axisYy = axis.y();
+		axisYz = axis.z();
+		axis = rotation.multiply(new Vec(0, 0, 1));
+		axisZx = axis.x();
+		axisZy = axis.y();
+		axisZz = axis.z();
+
+		halfX = Math.abs(sizeX) / 2;
+		halfY = Math.abs(sizeY) / 2;
+		halfZ = Math.abs(sizeZ) / 2;
+
+		// Extent of the rotated box along the world axes
+		float extentX = Math.abs(axisXx) * halfX + Math.abs(axisYx) * halfY + Math.abs(axisZx) * halfZ;
+		float extentY = Math.abs(axisXy) * halfX + Math.abs(axisYy) * halfY + Math.abs(axisZy) * halfZ;
+		float extentZ = Math.abs(axisXz) * halfX + Math.abs(axisYz) * halfY + Math.abs(axisZz) * halfZ;
+		bounds = new float[] { centerX - extentX, centerY - extentY, centerZ - extentZ, centerX + extentX,
+				centerY + extentY, centerZ + extentZ };
+	}
+
+	/**
+	 * Returns the axis aligned bounding box of the box in world space,
+	 * {@link #compile()} has to be called before
+	 * 
+	 * @return minX, minY, minZ, maxX, maxY, maxZ
+	 */
+	@Override
+	public float[] getBounds() {
+		return bounds;
+	}
+
+	/**
+	 * Tests whether a point is inside the box by transforming it into the
+	 * coordinate system of the box. {@link #compile()} has to be called before
+	 * 
+	 * @param px
+	 * @param py
+	 * @param pz
+	 * @return
+	 */
+	@Override
+	public boolean contains(float px, float py, float pz) {
+
+		float dx = px - centerX;
+		float dy = py - centerY;
+		float dz = pz - centerZ;
+
+		float local = axisXx * dx + axisXy * dy + axisXz * dz;
+		if (local > halfX || local < -halfX)
+			return false;
+
+		local = axisYx * dx + axisYy * dy + axisYz * dz;
+		if (local > halfY || local < -halfY)
+			return false;
+
+		local = axisZx * dx + axisZy * dy + axisZz * dz;
+		return local <= halfZ && local >= -halfZ;
+	}
+
 	public Vec[] getEdges() {
 
 		return edges;
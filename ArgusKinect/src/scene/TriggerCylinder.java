@@ -0,0 +1,280 @@
+package scene;
+
+import java.io.Serializable;
+import java.util.HashMap;
+
+import remixlab.dandelion.geom.Mat;
+import remixlab.dandelion.geom.Quat;
+import remixlab.dandelion.geom.Vec;
+
+/**
+ * A cylinder shaped Triggerzone, standing upright along its y axis. A crop
+ * radius bigger than 0 removes the inner part, so the cylinder becomes a ring.
+ *
+ * @author Moritz Skowronski
+ *
+ */
+public class TriggerCylinder extends AbstractTriggerZone implements Serializable {
+
+	private static final long serialVersionUID = 4821036917153329176L;
+
+	private String id;
+
+	// center of the cylinder
+	private float x;
+	private float y;
+	private float z;
+
+	private float radius;
+	private float height;
+	private float cropRadius;
+
+	private float rotateX;
+	private float rotateY;
+	private float rotateZ;
+
+	/*------------Compiled Cylinder------------*/
+	// Only needed for the containment test, so they are not sent between
+	// Control and Kinect, call compile() after receiving the cylinder
+
+	private transient float centerX, centerY, centerZ;
+	// axis of the cylinder in world space
+	private transient float axisX, axisY, axisZ;
+	private transient float halfHeight;
+	private transient float radiusSquared;
+	private transient float cropRadiusSquared;
+	private transient float[] bounds;
+
+	// amount of PersonPoints in the Cylinder
+	private int depthPointsInBox;
+	// <PersonID, Points of that Person>
+	private HashMap<Integer, Integer> pointsPerPerson;
+
+	/**
+	 * Constructs a new TriggerCylinder
+	 *
+	 * @param x
+	 *            x Position
+	 * @param y
+	 *            y Position
+	 * @param z
+	 *            z Position
+	 * @param radius
+	 *            outer radius
+	 * @param height
+	 *            height along the axis
+	 * @param cropRadius
+	 *            inner radius, 0 for a solid cylinder
+	 */
+	public TriggerCylinder(float x, float y, float z, float radius, float height, float cropRadius) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.radius = radius;
+		this.height = height;
+		this.cropRadius = cropRadius;
+
+		pointsPerPerson = new HashMap<Integer, Integer>();
+	}
+
+	/*-------------Setters--------------*/
+
+	@Override
+	public void setID(String id) {
+		this.id = id;
+	}
+
+	@Override
+	public void setX(float x) {
+		this.x = x;
+	}
+
+	@Override
+	public void setY(float y) {
+		this.y = y;
+	}
+
+	@Override
+	public void setZ(float z) {
+		this.z = z;
+	}
+
+	@Override
+	public void setRotateX(float x) {
+
+		this.rotateX = x;
+	}
+
+	@Override
+	public void setRotateY(float y) {
+
+		this.rotateY = y;
+	}
+
+	@Override
+	public void setRotateZ(float z) {
+
+		this.rotateZ = z;
+	}
+
+	@Override
+	public void setSize(float radius, float height, float cropRadius) {
+		this.radius = radius;
+		this.height = height;
+		this.cropRadius = cropRadius;
+	}
+
+	@Override
+	public void addToPointsPerPerson(Integer id, Integer amount) {
+
+		pointsPerPerson.put(id, amount);
+	}
+
+	@Override
+	public void addToPoints(int points) {
+
+		depthPointsInBox += points;
+	}
+
+	/*-------------Getters--------------*/
+
+	@Override
+	public String getID() {
+		return id;
+	}
+
+	@Override
+	public float getX() {
+		return x;
+	}
+
+	@Override
+	public float getY() {
+		return y;
+	}
+
+	@Override
+	public float getZ() {
+		return z;
+	}
+
+	@Override
+	public float[] getSize() {
+		return new float[] { radius, height, cropRadius };
+	}
+
+	@Override
+	public float getVolume() {
+		return (float) Math.PI * (radius * radius - cropRadius * cropRadius) * height;
+	}
+
+	@Override
+	public int getPointsInsideBox() {
+		return depthPointsInBox;
+	}
+
+	@Override
+	public HashMap<Integer, Integer> getPointsPerPerson() {
+		return pointsPerPerson;
+	}
+
+	@Override
+	public float getRotateX() {
+
+		return rotateX;
+	}
+
+	@Override
+	public float getRotateY() {
+
+		return rotateY;
+	}
+
+	@Override
+	public float getRotateZ() {
+
+		return rotateZ;
+	}
+
+	@Override
+	public Mat getRotationMatrix() {
+
+		Quat buildQuat = new Quat(0, 0, 0);
+		return buildQuat.matrix();
+	}
+
+	@Override
+	public void clearPoints() {
+
+		depthPointsInBox = 0;
+		pointsPerPerson.clear();
+	}
+
+	/*-------------Containment--------------*/
+
+	/**
+	 * Stores the axis, the half height and the squared radii as floats, so
+	 * {@link #contains(float, float, float)} doesn't need any objects
+	 */
+	@Override
+	public void compile() {
+
+		centerX = x;
+		centerY = y;
+		centerZ = z;
+
+		Vec axis = getRotationMatrix().multiply(new Vec(0, 1, 0));
+		axis.normalize();
+		axisX = axis.x();
+		axisY = axis.y();
+		axisZ = axis.z();
+
+		halfHeight = Math.abs(height) / 2;
+		radiusSquared = radius * radius;
+		cropRadiusSquared = cropRadius * cropRadius;
+
+		// Extent along a world axis: the caps are discs perpendicular to the
+		// cylinder axis
+		float extentX = Math.abs(axisX) * halfHeight + radius * (float) Math.sqrt(Math.max(0, 1 - axisX * axisX));
+		float extentY = Math.abs(axisY) * halfHeight + radius * (float) Math.sqrt(Math.max(0, 1 - axisY * axisY));
+		float extentZ = Math.abs(axisZ) * halfHeight + radius * (float) Math.sqrt(Math.max(0, 1 - axisZ * axisZ));
+		bounds = new float[] { centerX - extentX, centerY - extentY, centerZ - extentZ, centerX + extentX,
+				centerY + extentY, centerZ + extentZ };
+	}
+
+	/**
+	 * Tests whether a point is inside the cylinder by splitting it into its
+	 * distance along and its distance from the axis. {@link #compile()} has to
+	 * be called before
+	 *
+	 * @param px
+	 * @param py
+	 * @param pz
+	 * @return
+	 */
+	@Override
+	public boolean contains(float px, float py, float pz) {
+
+		float dx = px - centerX;
+		float dy = py - centerY;
+		float dz = pz - centerZ;
+
+		float along = axisX * dx + axisY * dy + axisZ * dz;
+		if (along > halfHeight || along < -halfHeight)
+			return false;
+
+		float distanceSquared = dx * dx + dy * dy + dz * dz - along * along;
+		return distanceSquared <= radiusSquared && distanceSquared >= cropRadiusSquared;
+	}
+
+	@Override
+	public float[] getBounds() {
+		return bounds;
+	}
+
+	@Override
+	public boolean isConvex() {
+		return cropRadius <= 0;
+	}
+
+}
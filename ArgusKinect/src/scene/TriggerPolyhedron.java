@@ -0,0 +1,356 @@
+package scene;
+
+import java.io.Serializable;
+import java.util.HashMap;
+
+import remixlab.dandelion.geom.Mat;
+import remixlab.dandelion.geom.Quat;
+import remixlab.dandelion.geom.Vec;
+
+/**
+ * A Triggerzone shaped like an arbitrary convex polyhedron. The vertices are
+ * given relative to the position of the zone and scaled by its size, every
+ * face is a list of vertex indices. A point is inside if it lies behind the
+ * planes of all faces.
+ *
+ * @author Moritz Skowronski
+ *
+ */
+public class TriggerPolyhedron extends AbstractTriggerZone implements Serializable {
+
+	private static final long serialVersionUID = -2630717385440823152L;
+
+	private String id;
+
+	// position of the zone, the vertices are relative to it
+	private float x;
+	private float y;
+	private float z;
+
+	// scale of the vertices
+	private float sizeX;
+	private float sizeY;
+	private float sizeZ;
+
+	private float rotateX;
+	private float rotateY;
+	private float rotateZ;
+
+	// x, y, z of every vertex
+	private float[] vertices;
+	// vertex indices of every face
+	private int[][] faces;
+
+	/*----------Compiled Polyhedron-----------*/
+	// Only needed for the containment test, so they are not sent between
+	// Control and Kinect, call compile() after receiving the polyhedron
+
+	// outward normal and distance of the plane of every face
+	private transient float[] planeX, planeY, planeZ, planeDistance;
+	private transient float[] bounds;
+
+	// amount of PersonPoints in the Polyhedron
+	private int depthPointsInBox;
+	// <PersonID, Points of that Person>
+	private HashMap<Integer, Integer> pointsPerPerson;
+
+	/**
+	 * Constructs a new TriggerPolyhedron
+	 *
+	 * @param x
+	 *            x Position
+	 * @param y
+	 *            y Position
+	 * @param z
+	 *            z Position
+	 * @param vertices
+	 *            x, y, z of every vertex relative to the position
+	 * @param faces
+	 *            vertex indices of every face, the polyhedron has to be convex
+	 */
+	public TriggerPolyhedron(float x, float y, float z, float[] vertices, int[][] faces) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.vertices = vertices;
+		this.faces = faces;
+		sizeX = 1;
+		sizeY = 1;
+		sizeZ = 1;
+
+		pointsPerPerson = new HashMap<Integer, Integer>();
+	}
+
+	/*-------------Setters--------------*/
+
+	@Override
+	public void setID(String id) {
+		this.id = id;
+	}
+
+	@Override
+	public void setX(float x) {
+		this.x = x;
+	}
+
+	@Override
+	public void setY(float y) {
+		this.y = y;
+	}
+
+	@Override
+	public void setZ(float z) {
+		this.z = z;
+	}
+
+	@Override
+	public void setRotateX(float x) {
+
+		this.rotateX = x;
+	}
+
+	@Override
+	public void setRotateY(float y) {
+
+		this.rotateY = y;
+	}
+
+	@Override
+	public void setRotateZ(float z) {
+
+		this.rotateZ = z;
+	}
+
+	/**
+	 * Sets the scale of the vertices
+	 */
+	@Override
+	public void setSize(float x, float y, float z) {
+		this.sizeX = x;
+		this.sizeY = y;
+		this.sizeZ = z;
+	}
+
+	@Override
+	public void addToPointsPerPerson(Integer id, Integer amount) {
+
+		pointsPerPerson.put(id, amount);
+	}
+
+	@Override
+	public void addToPoints(int points) {
+
+		depthPointsInBox += points;
+	}
+
+	/*-------------Getters--------------*/
+
+	@Override
+	public String getID() {
+		return id;
+	}
+
+	@Override
+	public float getX() {
+		return x;
+	}
+
+	@Override
+	public float getY() {
+		return y;
+	}
+
+	@Override
+	public float getZ() {
+		return z;
+	}
+
+	@Override
+	public float[] getSize() {
+		return new float[] { sizeX, sizeY, sizeZ };
+	}
+
+	/**
+	 * Calculates the volume with the divergence theorem over a triangle fan of
+	 * every face
+	 */
+	@Override
+	public float getVolume() {
+
+		float volume = 0;
+		for (int[] face : faces) {
+			for (int i = 1; i + 1 < face.length; i++) {
+
+				int a = face[0] * 3, b = face[i] * 3, c = face[i + 1] * 3;
+				float ax = vertices[a] * sizeX, ay = vertices[a + 1] * sizeY, az = vertices[a + 2] * sizeZ;
+				float bx = vertices[b] * sizeX, by = vertices[b + 1] * sizeY, bz = vertices[b + 2] * sizeZ;
+				float cx = vertices[c] * sizeX, cy = vertices[c + 1] * sizeY, cz = vertices[c + 2] * sizeZ;
+				volume += ax * (by * cz - bz * cy) + ay * (bz * cx - bx * cz) + az * (bx * cy - by * cx);
+			}
+		}
+		return Math.abs(volume) / 6;
+	}
+
+	@Override
+	public int getPointsInsideBox() {
+		return depthPointsInBox;
+	}
+
+	@Override
+	public HashMap<Integer, Integer> getPointsPerPerson() {
+		return pointsPerPerson;
+	}
+
+	@Override
+	public float getRotateX() {
+
+		return rotateX;
+	}
+
+	@Override
+	public float getRotateY() {
+
+		return rotateY;
+	}
+
+	@Override
+	public float getRotateZ() {
+
+		return rotateZ;
+	}
+
+	@Override
+	public Mat getRotationMatrix() {
+
+		Quat buildQuat = new Quat(0, 0, 0);
+		return buildQuat.matrix();
+	}
+
+	@Override
+	public void clearPoints() {
+
+		depthPointsInBox = 0;
+		pointsPerPerson.clear();
+	}
+
+	/**
+	 * Returns the vertices relative to the position
+	 *
+	 * @return x, y, z of every vertex
+	 */
+	public float[] getVertices() {
+		return vertices;
+	}
+
+	/**
+	 * Returns the faces
+	 *
+	 * @return vertex indices of every face
+	 */
+	public int[][] getFaces() {
+		return faces;
+	}
+
+	/*-------------Containment--------------*/
+
+	/**
+	 * Transforms the vertices into world space and stores the plane of every
+	 * face as floats, so {@link #contains(float, float, float)} doesn't need
+	 * any objects
+	 */
+	@Override
+	public void compile() {
+
+		int vertexCount = vertices.length / 3;
+		float[] world = new float[vertexCount * 3];
+		Mat rotation = getRotationMatrix();
+
+		bounds = new float[] { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE,
+				-Float.MAX_VALUE, -Float.MAX_VALUE };
+		float centroidX = 0, centroidY = 0, centroidZ = 0;
+
+		for (int i = 0; i < vertexCount; i++) {
+
+			Vec vertex = rotation.multiply(
+					new Vec(vertices[i * 3] * sizeX, vertices[i * 3 + 1] * sizeY, vertices[i * 3 + 2] * sizeZ));
+			world[i * 3] = vertex.x() + x;
+			world[i * 3 + 1] = vertex.y() + y;
+			world[i * 3 + 2] = vertex.z() + z;
+
+			for (int axis = 0; axis < 3; axis++) {
+				bounds[axis] = Math.min(bounds[axis], world[i * 3 + axis]);
+				bounds[axis + 3] = Math.max(bounds[axis + 3], world[i * 3 + axis]);
+			}
+			centroidX += world[i * 3] / vertexCount;
+			centroidY += world[i * 3 + 1] / vertexCount;
+			centroidZ += world[i * 3 + 2] / vertexCount;
+		}
+
+		planeX = new float[faces.length];
+		planeY = new float[faces.length];
+		planeZ = new float[faces.length];
+		planeDistance = new float[faces.length];
+
+		for (int f = 0; f < faces.length; f++) {
+
+			// Newell's method, works for faces with more than three vertices
+			int[] face = faces[f];
+			float nx = 0, ny = 0, nz = 0;
+			for (int i = 0; i < face.length; i++) {
+				int a = face[i] * 3;
+				int b = face[(i + 1) % face.length] * 3;
+				nx += (world[a + 1] - world[b + 1]) * (world[a + 2] + world[b + 2]);
+				ny += (world[a + 2] - world[b + 2]) * (world[a] + world[b]);
+				nz += (world[a] - world[b]) * (world[a + 1] + world[b + 1]);
+			}
+			float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+			if (length > 0) {
+				nx /= length;
+				ny /= length;
+				nz /= length;
+			}
+
+			int first = face[0] * 3;
+			float distance = nx * world[first] + ny * world[first + 1] + nz * world[first + 2];
+
+			// The normal has to point away from the inside, no matter in which
+			// order the vertices of the face are given
+			if (nx * centroidX + ny * centroidY + nz * centroidZ > distance) {
+				nx = -nx;
+				ny = -ny;
+				nz = -nz;
+				distance = -distance;
+			}
+
+			planeX[f] = nx;
+			planeY[f] = ny;
+			planeZ[f] = nz;
+			planeDistance[f] = distance;
+		}
+	}
+
+	/**
+	 * Tests whether a point is behind the planes of all faces.
+	 * {@link #compile()} has to be called before
+	 *
+	 * @param px
+	 * @param py
+	 * @param pz
+	 * @return
+	 */
+	@Override
+	public boolean contains(float px, float py, float pz) {
+
+		for (int f = 0; f < planeDistance.length; f++) {
+			if (planeX[f] * px + planeY[f] * py + planeZ[f] * pz > planeDistance[f])
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public float[] getBounds() {
+		return bounds;
+	}
+
+}
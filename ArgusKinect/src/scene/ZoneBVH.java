@@ -0,0 +1,215 @@
+package scene;
+
+/**
+ * Bounding volume hierarchy over the axis aligned bounding boxes of the
+ * triggerzones. Used to find all zones a bounding box can intersect without
+ * testing every zone, which pays off when there are many zones spread across
+ * the room.
+ *
+ * Bounds are stored as six floats per entry: minX, minY, minZ, maxX, maxY,
+ * maxZ.
+ *
+ * @author Moritz Skowronski
+ *
+ */
+public class ZoneBVH {
+
+	// Maximum number of zones in a leaf
+	private static final int LEAF_SIZE = 2;
+
+	// Bounds of the zones, six floats per zone
+	private float[] zoneBounds;
+
+	// Zone indices, every leaf owns a consecutive range
+	private int[] order;
+
+	// Nodes: bounds, children for inner nodes, range in order for leaves
+	private float[] nodeBounds;
+	private int[] left;
+	private int[] right;
+	private int[] start;
+	private int[] count;
+	private int nodeCount;
+
+	// Stack used for the traversal
+	private int[] stack;
+
+	public ZoneBVH() {
+
+		build(new float[0], 0);
+	}
+
+	/**
+	 * Builds the hierarchy by splitting the zones at the median of the longest
+	 * axis
+	 *
+	 * @param bounds
+	 *            six floats per zone
+	 * @param zones
+	 *            number of zones
+	 */
+	public void build(float[] bounds, int zones) {
+
+		zoneBounds = bounds;
+		order = new int[zones];
+		for (int i = 0; i < zones; i++) {
+			order[i] = i;
+		}
+
+		int maxNodes = Math.max(1, 2 * zones);
+		nodeBounds = new float[maxNodes * 6];
+		left = new int[maxNodes];
+		right = new int[maxNodes];
+		start = new int[maxNodes];
+		count = new int[maxNodes];
+		stack = new int[maxNodes];
+		nodeCount = 0;
+
+		if (zones > 0)
+			buildNode(0, zones);
+	}
+
+	/**
+	 * Finds all zones whose bounds intersect the given bounds
+	 *
+	 * @param minX
+	 * @param minY
+	 * @param minZ
+	 * @param maxX
+	 * @param maxY
+	 * @param maxZ
+	 * @param result
+	 *            is filled with the indices of the zones, has to be as big as
+	 *            the number of zones
+	 * @return number of zones found
+	 */
+	public int query(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, int[] result) {
+
+		if (nodeCount == 0)
+			return 0;
+
+		int found = 0;
+		int stackSize = 0;
+		stack[stackSize++] = 0;
+
+		while (stackSize > 0) {
+
+			int node = stack[--stackSize];
+			if (!intersects(nodeBounds, node, minX, minY, minZ, maxX, maxY, maxZ))
+				continue;
+
+			if (count[node] > 0) {
+				for (int i = start[node]; i < start[node] + count[node]; i++) {
+					if (intersects(zoneBounds, order[i], minX, minY, minZ, maxX, maxY, maxZ))
+						result[found++] = order[i];
+				}
+			} else {
+				stack[stackSize++] = left[node];
+				stack[stackSize++] = right[node];
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Creates the node for a range of zones and its children
+	 *
+	 * @param from
+	 *            first index in order
+	 * @param to
+	 *            last index in order, exclusive
+	 * @return the index of the node
+	 */
+	private int buildNode(int from, int to) {
+
+		int node = nodeCount++;
+
+		// Bounds of the node and of the centers of its zones
+		int offset = node * 6;
+		float[] centerBounds = { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE,
+				-Float.MAX_VALUE, -Float.MAX_VALUE };
+		for (int axis = 0; axis < 3; axis++) {
+			nodeBounds[offset + axis] = Float.MAX_VALUE;
+			nodeBounds[offset + axis + 3] = -Float.MAX_VALUE;
+		}
+		for (int i = from; i < to; i++) {
+			int zone = order[i] * 6;
+			for (int axis = 0; axis < 3; axis++) {
+				nodeBounds[offset + axis] = Math.min(nodeBounds[offset + axis], zoneBounds[zone + axis]);
+				nodeBounds[offset + axis + 3] = Math.max(nodeBounds[offset + axis + 3], zoneBounds[zone + axis + 3]);
+
+				float center = (zoneBounds[zone + axis] + zoneBounds[zone + axis + 3]) / 2;
+				centerBounds[axis] = Math.min(centerBounds[axis], center);
+				centerBounds[axis + 3] = Math.max(centerBounds[axis + 3], center);
+			}
+		}
+
+		if (to - from <= LEAF_SIZE) {
+			start[node] = from;
+			count[node] = to - from;
+			return node;
+		}
+
+		// Split along the axis in which the centers are spread the most
+		int axis = 0;
+		for (int i = 1; i < 3; i++) {
+			if (centerBounds[i + 3] - centerBounds[i] > centerBounds[axis + 3] - centerBounds[axis])
+				axis = i;
+		}
+
+		sortByCenter(from, to, axis);
+		int middle = (from + to) / 2;
+
+		count[node] = 0;
+		left[node] = buildNode(from, middle);
+		right[node] = buildNode(middle, to);
+		return node;
+	}
+
+	/**
+	 * Sorts the zones of a range by their center on an axis. There are only a
+	 * few zones, so an insertion sort is enough
+	 *
+	 * @param from
+	 * @param to
+	 * @param axis
+	 */
+	private void sortByCenter(int from, int to, int axis) {
+
+		for (int i = from + 1; i < to; i++) {
+
+			int zone = order[i];
+			float center = center(zone, axis);
+			int j = i;
+			while (j > from && center(order[j - 1], axis) > center) {
+				order[j] = order[j - 1];
+				j--;
+			}
+			order[j] = zone;
+		}
+	}
+
+	/**
+	 * Returns twice the center of a zone on an axis
+	 *
+	 * @param zone
+	 * @param axis
+	 * @return
+	 */
+	private float center(int zone, int axis) {
+		return zoneBounds[zone * 6 + axis] + zoneBounds[zone * 6 + axis + 3];
+	}
+
+	/**
+	 * Tests whether the bounds at an index intersect the given bounds
+	 *
+	 * @return
+	 */
+	private static boolean intersects(float[] bounds, int index, float minX, float minY, float minZ, float maxX,
+			float maxY, float maxZ) {
+
+		int offset = index * 6;
+		return bounds[offset] <= maxX && bounds[offset + 3] >= minX && bounds[offset + 1] <= maxY
+				&& bounds[offset + 4] >= minY && bounds[offset + 2] <= maxZ && bounds[offset + 5] >= minZ;
+	}
+}
@@ -0,0 +1,278 @@
+package scene;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Voxel grid over the bounds of all triggerzones. Every cell knows which zones
+ * contain it completely and which zones only touch it, stored as a pair of
+ * bitmasks. A point is classified by computing its cell, all zones of the
+ * first mask contain it without any test, only the zones of the second mask
+ * need the exact test.
+ *
+ * Most cells share the same pair of masks, so the cells only store an index
+ * into a palette of mask pairs. Up to 64 zones are supported.
+ *
+ * @author Moritz Skowronski
+ *
+ */
+public class ZoneVoxelGrid {
+
+	public static final int MAX_ZONES = 64;
+
+	// Edge length of a cell in millimeters
+	private static final float CELL_SIZE = 50;
+
+	// If the zones span more cells, the cells get bigger
+	private static final int MAX_CELLS = 2000000;
+
+	private boolean enabled;
+
+	// Grid origin, cell size and number of cells per axis
+	private float originX, originY, originZ;
+	private float cellSize;
+	private int cellsX, cellsY, cellsZ;
+
+	// Palette index of every cell, 0 is a cell without zones
+	private short[] cells;
+
+	// Zones containing the whole cell and zones touching the cell
+	private long[] paletteFull;
+	private long[] palettePartial;
+
+	public ZoneVoxelGrid() {
+
+		enabled = false;
+	}
+
+	/**
+	 * Builds the grid for the triggerzones. The zones have to be compiled. If
+	 * there are no zones or too many zones, the grid is disabled
+	 *
+	 * @param zones
+	 * @param zoneBounds
+	 *            world bounds of the zones, six floats per zone
+	 * @return true, if the grid can be used
+	 */
+	public boolean build(AbstractTriggerZone[] zones, float[] zoneBounds) {
+
+		clear();
+
+		if (zones.length == 0 || zones.length > MAX_ZONES)
+			return false;
+
+		// Grid spans the union of all zones
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+		for (int i = 0; i < zones.length; i++) {
+
+			int offset = i * 6;
+			minX = Math.min(minX, zoneBounds[offset]);
+			minY = Math.min(minY, zoneBounds[offset + 1]);
+			minZ = Math.min(minZ, zoneBounds[offset + 2]);
+			maxX = Math.max(maxX, zoneBounds[offset + 3]);
+			maxY = Math.max(maxY, zoneBounds[offset + 4]);
+			maxZ = Math.max(maxZ, zoneBounds[offset + 5]);
+		}
+
+		originX = minX;
+		originY = minY;
+		originZ = minZ;
+		cellSize = CELL_SIZE;
+		while (true) {
+			cellsX = Math.max(1, (int) Math.ceil((maxX - minX) / cellSize));
+			cellsY = Math.max(1, (int) Math.ceil((maxY - minY) / cellSize));
+			cellsZ = Math.max(1, (int) Math.ceil((maxZ - minZ) / cellSize));
+			if ((long) cellsX * cellsY * cellsZ <= MAX_CELLS)
+				break;
+			cellSize *= 2;
+		}
+		int cellCount = cellsX * cellsY * cellsZ;
+
+		// Classify all cells inside the bounds of every zone
+		long[] full = new long[cellCount];
+		long[] partial = new long[cellCount];
+		for (int i = 0; i < zones.length; i++) {
+
+			AbstractTriggerZone zone = zones[i];
+			// Cells of zones with holes always need the exact test
+			boolean convex = zone.isConvex();
+			int offset = i * 6;
+			int startX = cell(zoneBounds[offset], originX, cellsX);
+			int startY = cell(zoneBounds[offset + 1], originY, cellsY);
+			int startZ = cell(zoneBounds[offset + 2], originZ, cellsZ);
+			int endX = cell(zoneBounds[offset + 3], originX, cellsX);
+			int endY = cell(zoneBounds[offset + 4], originY, cellsY);
+			int endZ = cell(zoneBounds[offset + 5], originZ, cellsZ);
+			long bit = 1L << i;
+
+			for (int z = startZ; z <= endZ; z++) {
+				for (int y = startY; y <= endY; y++) {
+					for (int x = startX; x <= endX; x++) {
+
+						int index = (z * cellsY + y) * cellsX + x;
+						if (convex && containsCell(zone, x, y, z))
+							full[index] |= bit;
+						else
+							partial[index] |= bit;
+					}
+				}
+			}
+		}
+
+		// Compress the mask pairs into a palette
+		HashMap<MaskPair, Short> palette = new HashMap<MaskPair, Short>();
+		paletteFull = new long[16];
+		palettePartial = new long[16];
+		palette.put(new MaskPair(0, 0), (short) 0);
+		cells = new short[cellCount];
+
+		for (int i = 0; i < cellCount; i++) {
+
+			if (full[i] == 0 && partial[i] == 0)
+				continue;
+
+			MaskPair pair = new MaskPair(full[i], partial[i]);
+			Short entry = palette.get(pair);
+			if (entry == null) {
+
+				int size = palette.size();
+				if (size > Short.MAX_VALUE) {
+					System.err.println("Too many different triggerzone overlaps for the voxel grid");
+					cells = null;
+					return false;
+				}
+				if (size == paletteFull.length) {
+					paletteFull = Arrays.copyOf(paletteFull, size * 2);
+					palettePartial = Arrays.copyOf(palettePartial, size * 2);
+				}
+				paletteFull[size] = full[i];
+				palettePartial[size] = partial[i];
+				entry = (short) size;
+				palette.put(pair, entry);
+			}
+			cells[i] = entry;
+		}
+
+		enabled = true;
+		return true;
+	}
+
+	/**
+	 * Disables the grid until it is built again
+	 */
+	public void clear() {
+
+		enabled = false;
+		cells = null;
+	}
+
+	/**
+	 * Returns the cell of a point
+	 *
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return palette index of the cell, 0 if no zone touches the point
+	 */
+	public int lookup(float x, float y, float z) {
+
+		float fx = (x - originX) / cellSize;
+		float fy = (y - originY) / cellSize;
+		float fz = (z - originZ) / cellSize;
+		if (fx < 0 || fy < 0 || fz < 0 || fx > cellsX || fy > cellsY || fz > cellsZ)
+			return 0;
+
+		// points on the upper bounds belong to the last cell
+		int cellX = Math.min((int) fx, cellsX - 1);
+		int cellY = Math.min((int) fy, cellsY - 1);
+		int cellZ = Math.min((int) fz, cellsZ - 1);
+		return cells[(cellZ * cellsY + cellY) * cellsX + cellX];
+	}
+
+	/**
+	 * Returns the zones that contain the whole cell
+	 *
+	 * @param entry
+	 *            palette index from {@link #lookup(float, float, float)}
+	 * @return bitmask of zone indices
+	 */
+	public long getFullZones(int entry) {
+		return paletteFull[entry];
+	}
+
+	/**
+	 * Returns the zones that only touch the cell and need the exact test
+	 *
+	 * @param entry
+	 *            palette index from {@link #lookup(float, float, float)}
+	 * @return bitmask of zone indices
+	 */
+	public long getPartialZones(int entry) {
+		return palettePartial[entry];
+	}
+
+	/**
+	 * Returns whether the grid was built for the current zones
+	 *
+	 * @return
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Tests whether all corners of a cell are inside a convex zone, so the
+	 * whole cell is inside
+	 *
+	 * @return
+	 */
+	private boolean containsCell(AbstractTriggerZone zone, int x, int y, int z) {
+
+		for (int corner = 0; corner < 8; corner++) {
+
+			float cornerX = originX + (x + (corner & 1)) * cellSize;
+			float cornerY = originY + (y + ((corner >> 1) & 1)) * cellSize;
+			float cornerZ = originZ + (z + ((corner >> 2) & 1)) * cellSize;
+			if (!zone.contains(cornerX, cornerY, cornerZ))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the cell of a coordinate, clamped to the grid
+	 *
+	 * @return
+	 */
+	private int cell(float value, float origin, int cells) {
+		return Math.min(cells - 1, Math.max(0, (int) ((value - origin) / cellSize)));
+	}
+
+	/**
+	 * Key of the palette
+	 */
+	private static class MaskPair {
+
+		private long full;
+		private long partial;
+
+		MaskPair(long full, long partial) {
+			this.full = full;
+			this.partial = partial;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof MaskPair))
+				return false;
+			MaskPair other = (MaskPair) o;
+			return full == other.full && partial == other.partial;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(full * 31 + partial);
+		}
+	}
+}